@@ -0,0 +1,261 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.ToString;
+
+/**
+ * Size-classed pool of heap ({@code byte[]}) and direct
+ * ({@link ByteBuffer}) buffers used wherever {@link.this} library buffers
+ * an entity.  Buffers larger than the largest size class are allocated
+ * (and dropped) normally.
+ * <p>
+ * Leak detection: {@link #outstanding()} reports the number of buffers
+ * acquired and not yet released.  If the system property
+ * {@value #LEAK_DETECTION} is {@code true}, the pool also records where
+ * each outstanding buffer was acquired (see {@link #leaks()}) so tests
+ * can assert that every buffer is returned.
+ * </p>
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "sizes", "retain" })
+public class BufferPool {
+
+    /**
+     * System property to enable leak tracking.
+     */
+    public static final String LEAK_DETECTION = "ball.http.BufferPool.leakDetection";
+
+    private static final BufferPool DEFAULT =
+        new BufferPool(new int[] { 4 << 10, 16 << 10, 64 << 10, 256 << 10 }, 64);
+
+    private final int[] sizes;
+    private final int retain;
+    private final SizeClass<byte[]>[] heap;
+    private final SizeClass<ByteBuffer>[] direct;
+    private final AtomicLong outstanding = new AtomicLong(0);
+    private final Map<Object,Throwable> acquired =
+        Boolean.getBoolean(LEAK_DETECTION) ? new IdentityHashMap<>() : null;
+
+    /**
+     * Sole constructor.
+     *
+     * @param   sizes           The (ascending) size classes.
+     * @param   retain          The maximum number of free buffers
+     *                          retained per size class.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public BufferPool(int[] sizes, int retain) {
+        this.sizes = sizes.clone();
+        this.retain = retain;
+        this.heap = new SizeClass[sizes.length];
+        this.direct = new SizeClass[sizes.length];
+
+        for (int i = 0; i < sizes.length; i += 1) {
+            heap[i] = new SizeClass<>();
+            direct[i] = new SizeClass<>();
+        }
+    }
+
+    /**
+     * @return  The default (shared) {@link BufferPool}.
+     */
+    public static BufferPool getDefault() { return DEFAULT; }
+
+    /**
+     * @return  The largest pooled buffer size.
+     */
+    public int getMaximumSize() { return sizes[sizes.length - 1]; }
+
+    /**
+     * Method to acquire a heap buffer.  The caller must
+     * {@link #release(byte[])} the buffer when done.
+     *
+     * @param   minimum         The minimum buffer length.
+     *
+     * @return  A {@code byte[]} at least {@code minimum} in length.
+     */
+    public byte[] acquire(int minimum) {
+        int index = index(minimum);
+        byte[] buffer = (index >= 0) ? heap[index].poll() : null;
+
+        if (buffer == null) {
+            buffer = new byte[(index >= 0) ? sizes[index] : minimum];
+        }
+
+        track(buffer);
+
+        return buffer;
+    }
+
+    /**
+     * Method to release a heap buffer acquired from {@link.this} pool.
+     *
+     * @param   buffer          The {@code byte[]} (may be {@code null}).
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null) {
+            untrack(buffer);
+
+            int index = exact(buffer.length);
+
+            if (index >= 0) {
+                heap[index].offer(buffer, retain);
+            }
+        }
+    }
+
+    /**
+     * Method to acquire a direct buffer.  The caller must
+     * {@link #release(ByteBuffer)} the buffer when done.
+     *
+     * @param   minimum         The minimum buffer capacity.
+     *
+     * @return  A cleared direct {@link ByteBuffer} with at least
+     *          {@code minimum} capacity.
+     */
+    public ByteBuffer acquireDirect(int minimum) {
+        int index = index(minimum);
+        ByteBuffer buffer = (index >= 0) ? direct[index].poll() : null;
+
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect((index >= 0) ? sizes[index] : minimum);
+        }
+
+        buffer.clear();
+        track(buffer);
+
+        return buffer;
+    }
+
+    /**
+     * Method to release a direct buffer acquired from {@link.this} pool.
+     *
+     * @param   buffer          The {@link ByteBuffer} (may be
+     *                          {@code null}).
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null) {
+            untrack(buffer);
+
+            int index = exact(buffer.capacity());
+
+            if (index >= 0 && buffer.isDirect()) {
+                direct[index].offer(buffer, retain);
+            }
+        }
+    }
+
+    /**
+     * @return  The number of buffers acquired and not yet released.
+     */
+    public long outstanding() { return outstanding.get(); }
+
+    /**
+     * Method to get the acquisition sites of outstanding buffers.  Only
+     * available if {@value #LEAK_DETECTION} is {@code true}.
+     *
+     * @return  A {@link Collection} of {@link Throwable}s whose stack
+     *          traces identify where each outstanding buffer was
+     *          acquired (empty if leak detection is not enabled).
+     */
+    public Collection<Throwable> leaks() {
+        Collection<Throwable> leaks = new ArrayList<>();
+
+        if (acquired != null) {
+            synchronized (acquired) {
+                leaks.addAll(acquired.values());
+            }
+        }
+
+        return leaks;
+    }
+
+    private int index(int minimum) {
+        for (int i = 0; i < sizes.length; i += 1) {
+            if (minimum <= sizes[i]) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int exact(int length) {
+        for (int i = 0; i < sizes.length; i += 1) {
+            if (length == sizes[i]) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void track(Object buffer) {
+        outstanding.incrementAndGet();
+
+        if (acquired != null) {
+            synchronized (acquired) {
+                acquired.put(buffer, new Throwable("Buffer acquired (" + Thread.currentThread().getName() + ")"));
+            }
+        }
+    }
+
+    private void untrack(Object buffer) {
+        outstanding.decrementAndGet();
+
+        if (acquired != null) {
+            synchronized (acquired) {
+                acquired.remove(buffer);
+            }
+        }
+    }
+
+    private static class SizeClass<T> {
+        private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger(0);
+
+        public T poll() {
+            T buffer = queue.poll();
+
+            if (buffer != null) {
+                size.decrementAndGet();
+            }
+
+            return buffer;
+        }
+
+        public void offer(T buffer, int retain) {
+            if (size.incrementAndGet() <= retain) {
+                queue.offer(buffer);
+            } else {
+                size.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Protocol call deadline.  A {@link Deadline} bounds every protocol
+ * call made while it is in effect: on the current {@link Thread} (see
+ * {@link #enter()}), as a protocol method {@link Deadline} parameter,
+ * or as a {@link ball.http.annotation.Timeout#total()}.  The earliest
+ * {@link Deadline} in effect wins so nested calls can only shrink it.
+ * <p>
+ * A call whose {@link Deadline} has passed fails with an
+ * {@link InterruptedIOException} before a connection is leased;
+ * otherwise, the connection request, connect, and response timeouts
+ * are limited to the remaining time, the request is aborted when the
+ * {@link Deadline} passes, and the remaining time (in milliseconds) is
+ * sent to the server in the {@link ProtocolClient#getDeadlineHeader()}
+ * header (see {@link #parse(String)}).
+ * </p>
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Default deadline header name.
+     */
+    public static final String HEADER = "X-Request-Timeout";
+
+    private final long nanos;
+
+    private Deadline(long nanos) { this.nanos = nanos; }
+
+    /**
+     * Static method to create a {@link Deadline} relative to now.
+     *
+     * @param   amount          The amount of time.
+     * @param   unit            The {@link TimeUnit} of {@code amount}.
+     *
+     * @return  The {@link Deadline}.
+     */
+    public static Deadline after(long amount, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(amount));
+    }
+
+    /**
+     * Static method to create a {@link Deadline} relative to now.
+     *
+     * @param   duration        The {@link Duration}.
+     *
+     * @return  The {@link Deadline}.
+     */
+    public static Deadline after(Duration duration) {
+        return after(duration.toNanos(), NANOSECONDS);
+    }
+
+    /**
+     * Static method to parse a {@link Deadline} header value (the
+     * remaining milliseconds) received from a caller.
+     *
+     * @param   value           The header value.
+     *
+     * @return  The {@link Deadline} ({@code null} if {@code value} is
+     *          {@code null} or malformed).
+     */
+    public static Deadline parse(String value) {
+        Deadline deadline = null;
+
+        if (value != null) {
+            try {
+                deadline = after(Long.parseLong(value.trim()), MILLISECONDS);
+            } catch (NumberFormatException exception) {
+            }
+        }
+
+        return deadline;
+    }
+
+    /**
+     * Static method to get the {@link Deadline} in effect on the current
+     * {@link Thread}.
+     *
+     * @return  The {@link Deadline} (may be {@code null}).
+     */
+    public static Deadline current() { return CURRENT.get(); }
+
+    /**
+     * Static method to get the earlier of two {@link Deadline}s.
+     *
+     * @param   first           The first {@link Deadline} (may be
+     *                          {@code null}).
+     * @param   second          The second {@link Deadline} (may be
+     *                          {@code null}).
+     *
+     * @return  The earlier {@link Deadline} ({@code null} if both are
+     *          {@code null}).
+     */
+    public static Deadline min(Deadline first, Deadline second) {
+        Deadline deadline = null;
+
+        if (first == null) {
+            deadline = second;
+        } else if (second == null) {
+            deadline = first;
+        } else {
+            deadline = (first.nanos - second.nanos <= 0) ? first : second;
+        }
+
+        return deadline;
+    }
+
+    /**
+     * Method to get the time remaining.
+     *
+     * @param   unit            The {@link TimeUnit}.
+     *
+     * @return  The time remaining ({@code 0} if the {@link Deadline}
+     *          has passed).
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(0, nanos - System.nanoTime()), NANOSECONDS);
+    }
+
+    /**
+     * @return  {@code true} if {@link.this} {@link Deadline} has passed;
+     *          {@code false} otherwise.
+     */
+    public boolean isExpired() { return nanos - System.nanoTime() <= 0; }
+
+    /**
+     * Method to throw an {@link InterruptedIOException} if
+     * {@link.this} {@link Deadline} has passed.
+     *
+     * @throws  InterruptedIOException
+     *                          If the {@link Deadline} has passed.
+     */
+    public void check() throws InterruptedIOException {
+        if (isExpired()) {
+            throw new InterruptedIOException("Deadline exceeded");
+        }
+    }
+
+    /**
+     * Method to put {@link.this} {@link Deadline} in effect on the
+     * current {@link Thread} until the returned {@link Scope} is closed.
+     * If an earlier {@link Deadline} is already in effect, it remains in
+     * effect.  For example:
+     * <pre>{@code
+     * try (Deadline.Scope scope = Deadline.after(250, MILLISECONDS).enter()) {
+     *     ...
+     * }
+     * }</pre>
+     *
+     * @return  The {@link Scope}.
+     */
+    public Scope enter() {
+        Deadline previous = CURRENT.get();
+
+        CURRENT.set(min(previous, this));
+
+        return new Scope(previous);
+    }
+
+    /**
+     * Method to run a task when {@link.this} {@link Deadline} passes.
+     *
+     * @param   task            The {@link Runnable}.
+     *
+     * @return  The {@link ScheduledFuture} (to cancel the task).
+     */
+    ScheduledFuture<?> schedule(Runnable task) {
+        return Scheduler.SCHEDULER.schedule(task, nanos - System.nanoTime(), NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + remaining(MILLISECONDS) + " ms)";
+    }
+
+    /**
+     * {@link Deadline} scope (see {@link #enter()}).  Closing the
+     * {@link Scope} restores the previous {@link Deadline}.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Deadline previous;
+
+        private Scope(Deadline previous) { this.previous = previous; }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    private static class Scheduler {
+        private static final ScheduledThreadPoolExecutor SCHEDULER =
+            new ScheduledThreadPoolExecutor(1, ProtocolExecutors.threadFactory());
+
+        static {
+            SCHEDULER.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import lombok.ToString;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded-parallelism fan-out for
+ * {@link ProtocolClient#fanOut(ProtocolFunction,Iterator,Executor,int,Consumer)}.
+ * At most {@code parallelism} calls are in flight at once; the next
+ * argument is only taken from the {@link Iterator} when a call completes
+ * so arbitrarily long (or lazy) argument sequences run in constant
+ * memory.  {@link Outcome}s are delivered on the calling {@link Thread}
+ * in completion order.  The caller's {@link Deadline#current()} and
+ * {@link LeasePriority} (if any) are in effect for every call.
+ *
+ * @param       <P>             The protocol type.
+ * @param       <A>             The argument (tuple) type.
+ * @param       <R>             The result type.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "parallelism" })
+class FanOut<P,A,R> {
+    private final P proxy;
+    private final ProtocolFunction<? super P,? super A,? extends R> function;
+    private final CompletionService<Outcome<A,R>> service;
+    private final int parallelism;
+
+    /**
+     * Sole constructor.
+     *
+     * @param   proxy           The {@link ProtocolClient#proxy()}.
+     * @param   function        The {@link ProtocolFunction}.
+     * @param   executor        The {@link Executor}.
+     * @param   parallelism     The maximum number of calls in flight.
+     */
+    public FanOut(P proxy, ProtocolFunction<? super P,? super A,? extends R> function,
+                  Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism=" + parallelism);
+        }
+
+        this.proxy = requireNonNull(proxy, "proxy");
+        this.function = requireNonNull(function, "function");
+        this.service = new ExecutorCompletionService<>(requireNonNull(executor, "executor"));
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Method to make a call for every argument.
+     *
+     * @param   arguments       The argument {@link Iterator}.
+     * @param   consumer        The {@link Consumer} of {@link Outcome}s.
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting (calls in
+     *                          flight are cancelled).
+     */
+    public void run(Iterator<? extends A> arguments,
+                    Consumer<? super Outcome<A,R>> consumer) throws InterruptedException {
+        Set<Future<Outcome<A,R>>> pending = new HashSet<>();
+        int index = 0;
+
+        try {
+            while (pending.size() < parallelism && arguments.hasNext()) {
+                pending.add(submit(index++, arguments.next()));
+            }
+
+            while (! pending.isEmpty()) {
+                Future<Outcome<A,R>> future = service.take();
+
+                pending.remove(future);
+
+                if (arguments.hasNext()) {
+                    pending.add(submit(index++, arguments.next()));
+                }
+
+                consumer.accept(future.get());
+            }
+        } catch (ExecutionException exception) {
+            /*
+             * Not expected: every task captures its own failure.
+             */
+            throw new IllegalStateException(exception.getCause());
+        } finally {
+            pending.forEach(t -> t.cancel(true));
+        }
+    }
+
+    @SuppressWarnings({ "try" })
+    private Future<Outcome<A,R>> submit(int index, A argument) {
+        Deadline deadline = Deadline.current();
+        Integer priority = LeasePriority.explicit();
+
+        return service.submit(() -> {
+                long start = System.nanoTime();
+                R value = null;
+                Throwable failure = null;
+
+                try (Deadline.Scope scope = (deadline != null) ? deadline.enter() : null;
+                     LeasePriority.Scope ordering = (priority != null) ? LeasePriority.enter(priority) : null) {
+                    value = function.apply(proxy, argument);
+                } catch (Throwable throwable) {
+                    failure = throwable;
+                }
+
+                return new Outcome<>(index, argument, value, failure, System.nanoTime() - start);
+            });
+    }
+}
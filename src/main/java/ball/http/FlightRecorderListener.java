@@ -0,0 +1,42 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Java Flight Recorder {@link ProtocolCallListener}.  Java Flight
+ * Recorder events are not available before Java 11 so this
+ * implementation provides no listener; the Java 11 layer of the
+ * multi-release JAR replaces this class with one that records every
+ * {@link ProtocolCall} and its {@link ProtocolCall.Phase}s as events.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class FlightRecorderListener implements ProtocolCallListener {
+
+    /**
+     * @return  The shared {@link ProtocolCallListener} ({@code null} if
+     *          Java Flight Recorder is not available).
+     */
+    public static ProtocolCallListener getInstance() { return null; }
+}
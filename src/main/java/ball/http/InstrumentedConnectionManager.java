@@ -0,0 +1,241 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.ToString;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link HttpClientConnectionManager} wrapper that reports connection
+ * leasing and connecting to the {@link ProtocolCall#current()} call.
+ * If the target is a {@link ConnPoolControl}, leases are admitted
+ * through a {@link LeaseGate} in {@link LeasePriority} order before
+ * they are requested from the pool.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString
+class InstrumentedConnectionManager implements HttpClientConnectionManager {
+    private final HttpClientConnectionManager manager;
+    private final LeaseGate gate;
+    private final ConcurrentHashMap<ConnectionEndpoint,HttpRoute> admitted = new ConcurrentHashMap<>();
+
+    /**
+     * Sole constructor.
+     *
+     * @param   manager         The target
+     *                          {@link HttpClientConnectionManager}.
+     */
+    @SuppressWarnings({ "unchecked" })
+    public InstrumentedConnectionManager(HttpClientConnectionManager manager) {
+        this.manager = requireNonNull(manager, "manager");
+        this.gate =
+            (manager instanceof ConnPoolControl<?>)
+                ? new LeaseGate((ConnPoolControl<HttpRoute>) manager)
+                : null;
+    }
+
+    /**
+     * @return  The {@link LeaseGate} ({@code null} if the target
+     *          {@link HttpClientConnectionManager} is not a
+     *          {@link ConnPoolControl}).
+     */
+    public LeaseGate gate() { return gate; }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout timeout, Object state) {
+        LeaseRequest request = null;
+
+        if (gate != null) {
+            request = new GatedLeaseRequest(id, route, state);
+        } else {
+            LeaseRequest target = manager.lease(id, route, timeout, state);
+
+            request = new LeaseRequest() {
+                @Override
+                public ConnectionEndpoint get(Timeout timeout) throws InterruptedException,
+                                                                      ExecutionException, TimeoutException {
+                    ProtocolCall call = ProtocolCall.current();
+
+                    if (call != null) {
+                        call.enter(ProtocolCall.Phase.LEASE);
+                    }
+
+                    try {
+                        return target.get(timeout);
+                    } finally {
+                        if (call != null) {
+                            call.enter(ProtocolCall.Phase.TTFB);
+                        }
+                    }
+                }
+
+                @Override
+                public boolean cancel() { return target.cancel(); }
+            };
+        }
+
+        return request;
+    }
+
+    @Override
+    public void release(ConnectionEndpoint endpoint, Object state, TimeValue keepAlive) {
+        manager.release(endpoint, state, keepAlive);
+
+        HttpRoute route = admitted.remove(endpoint);
+
+        if (route != null) {
+            gate.release(route);
+        }
+    }
+
+    @Override
+    public void connect(ConnectionEndpoint endpoint, TimeValue timeout, HttpContext context) throws IOException {
+        ProtocolCall call = ProtocolCall.current();
+
+        if (call != null) {
+            call.enter(ProtocolCall.Phase.CONNECT);
+        }
+
+        try {
+            manager.connect(endpoint, timeout, context);
+        } finally {
+            if (call != null) {
+                call.enter(ProtocolCall.Phase.TTFB);
+            }
+        }
+    }
+
+    @Override
+    public void upgrade(ConnectionEndpoint endpoint, HttpContext context) throws IOException {
+        ProtocolCall call = ProtocolCall.current();
+
+        if (call != null) {
+            call.enter(ProtocolCall.Phase.CONNECT);
+        }
+
+        try {
+            manager.upgrade(endpoint, context);
+        } finally {
+            if (call != null) {
+                call.enter(ProtocolCall.Phase.TTFB);
+            }
+        }
+    }
+
+    @Override
+    public void close(CloseMode mode) { manager.close(mode); }
+
+    @Override
+    public void close() throws IOException { manager.close(); }
+
+    @ToString(of = { "route", "waiter" })
+    private class GatedLeaseRequest implements LeaseRequest {
+        private final String id;
+        private final HttpRoute route;
+        private final Object state;
+        private final LeaseGate.Waiter waiter;
+        private volatile LeaseRequest request = null;
+
+        public GatedLeaseRequest(String id, HttpRoute route, Object state) {
+            this.id = id;
+            this.route = route;
+            this.state = state;
+            this.waiter = new LeaseGate.Waiter(LeasePriority.current());
+        }
+
+        @Override
+        public ConnectionEndpoint get(Timeout timeout) throws InterruptedException,
+                                                              ExecutionException, TimeoutException {
+            ProtocolCall call = ProtocolCall.current();
+
+            if (call != null) {
+                call.enter(ProtocolCall.Phase.LEASE);
+            }
+
+            try {
+                long start = System.nanoTime();
+
+                gate.acquire(route, waiter, timeout);
+
+                ConnectionEndpoint endpoint = null;
+
+                try {
+                    Timeout remaining = timeout;
+
+                    if (timeout != null && (! timeout.isDisabled())) {
+                        long nanos = timeout.toNanoseconds() - (System.nanoTime() - start);
+
+                        if (nanos <= 0) {
+                            throw new TimeoutException("Timeout waiting for lease admission: " + route);
+                        }
+
+                        remaining = Timeout.of(nanos, TimeUnit.NANOSECONDS);
+                    }
+
+                    request = manager.lease(id, route, remaining, state);
+
+                    if (waiter.isCancelled()) {
+                        request.cancel();
+                    }
+
+                    endpoint = request.get(remaining);
+                    admitted.put(endpoint, route);
+                } finally {
+                    if (endpoint == null) {
+                        gate.release(route);
+                    }
+                }
+
+                return endpoint;
+            } finally {
+                if (call != null) {
+                    call.enter(ProtocolCall.Phase.TTFB);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            boolean cancelled = waiter.cancel();
+            LeaseRequest request = this.request;
+
+            if (request != null) {
+                cancelled |= request.cancel();
+            }
+
+            return cancelled;
+        }
+    }
+}
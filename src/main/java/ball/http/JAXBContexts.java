@@ -0,0 +1,202 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Process-wide {@link JAXBContext} cache.  A protocol interface's
+ * {@link JAXBContext} is bound to the JAXB-annotated ({@link XmlRootElement},
+ * {@link XmlType}, or {@link XmlEnum}) classes found in its methods' return
+ * and entity parameter types (the protocol interface itself if there are
+ * none).  Contexts are keyed by that {@link Set} of classes, built once,
+ * and shared by every {@link ProtocolClient}.  Subclasses may start
+ * building a context on a background {@link Thread} when they are loaded:
+ *
+ * {@code static { JAXBContexts.preload(Protocol.class); }}
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class JAXBContexts {
+    private static final ConcurrentHashMap<Set<Class<?>>,CompletableFuture<JAXBContext>> CACHE =
+        new ConcurrentHashMap<>();
+    private static final ClassValue<Set<Class<?>>> TYPES =
+        new ClassValue<Set<Class<?>>>() {
+            @Override
+            protected Set<Class<?>> computeValue(Class<?> protocol) {
+                return getBoundTypes(protocol);
+            }
+        };
+
+    /**
+     * Method to get the (cached) {@link JAXBContext} for a protocol
+     * interface.  Waits for any {@link #preload(Class)} in progress.
+     *
+     * @param   protocol        The protocol interface {@link Class}.
+     *
+     * @return  The {@link JAXBContext}.
+     *
+     * @throws  IllegalStateException
+     *                          If the {@link JAXBContext} cannot be
+     *                          created.
+     */
+    public static JAXBContext get(Class<?> protocol) {
+        CompletableFuture<JAXBContext> future = future(protocol, false);
+        JAXBContext context = null;
+
+        try {
+            context = future.join();
+        } catch (CompletionException exception) {
+            Throwable cause = exception.getCause();
+
+            throw (cause instanceof IllegalStateException) ? (IllegalStateException) cause : exception;
+        }
+
+        return context;
+    }
+
+    /**
+     * Method to build a protocol interface's {@link JAXBContext} on
+     * {@link ProtocolExecutors#executor()} (if it is not already built or
+     * being built).
+     *
+     * @param   protocol        The protocol interface {@link Class}.
+     *
+     * @return  The {@link CompletableFuture} that completes with the
+     *          {@link JAXBContext}.
+     */
+    public static CompletableFuture<JAXBContext> preload(Class<?> protocol) {
+        return future(protocol, true);
+    }
+
+    /**
+     * Method to get the classes a protocol interface's
+     * {@link JAXBContext} is bound to.
+     *
+     * @param   protocol        The protocol interface {@link Class}.
+     *
+     * @return  The (unmodifiable) {@link Set} of classes.
+     */
+    public static Set<Class<?>> getBoundTypes(Class<?> protocol) {
+        Set<Class<?>> set = new TreeSet<>(Comparator.comparing(Class::getName));
+
+        for (Method method : protocol.getMethods()) {
+            if (! (method.isDefault() || Modifier.isStatic(method.getModifiers()))) {
+                addBoundTypes(set, method.getGenericReturnType());
+
+                for (Parameter parameter : method.getParameters()) {
+                    if (parameter.getAnnotations().length == 0) {
+                        addBoundTypes(set, parameter.getParameterizedType());
+                    }
+                }
+            }
+        }
+
+        if (set.isEmpty()) {
+            set.add(protocol);
+        }
+
+        return Collections.unmodifiableSet(new LinkedHashSet<>(set));
+    }
+
+    private static void addBoundTypes(Set<Class<?>> set, Type type) {
+        if (type instanceof Class<?>) {
+            Class<?> raw = (Class<?>) type;
+
+            if (raw.isArray()) {
+                addBoundTypes(set, raw.getComponentType());
+            } else if (raw.isAnnotationPresent(XmlRootElement.class)
+                       || raw.isAnnotationPresent(XmlType.class)
+                       || raw.isAnnotationPresent(XmlEnum.class)) {
+                set.add(raw);
+            }
+        } else if (type instanceof ParameterizedType) {
+            addBoundTypes(set, ((ParameterizedType) type).getRawType());
+
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                addBoundTypes(set, argument);
+            }
+        } else if (type instanceof GenericArrayType) {
+            addBoundTypes(set, ((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                addBoundTypes(set, bound);
+            }
+        }
+    }
+
+    private static CompletableFuture<JAXBContext> future(Class<?> protocol, boolean async) {
+        Set<Class<?>> key = TYPES.get(protocol);
+        CompletableFuture<JAXBContext> future = CACHE.get(key);
+
+        if (future == null) {
+            CompletableFuture<JAXBContext> created = new CompletableFuture<>();
+
+            future = CACHE.putIfAbsent(key, created);
+
+            if (future == null) {
+                future = created;
+
+                if (async) {
+                    ProtocolExecutors.executor().execute(() -> build(key, created));
+                } else {
+                    build(key, created);
+                }
+            }
+        }
+
+        return future;
+    }
+
+    private static void build(Set<Class<?>> key, CompletableFuture<JAXBContext> future) {
+        try {
+            future.complete(JAXBContext.newInstance(key.toArray(new Class<?>[] { })));
+        } catch (JAXBException | RuntimeException exception) {
+            /*
+             * Do not cache failures: a later call may succeed (e.g., with
+             * a different context class loader).
+             */
+            CACHE.remove(key, future);
+            future.completeExceptionally(new IllegalStateException(exception));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import com.fasterxml.jackson.core.JsonFactory;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hc.core5.http.ContentType;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Jackson data formats supported by {@link ProtocolRequestBuilder} and
+ * {@link ProtocolResponseHandler}.  The binary formats are opt-in: the
+ * corresponding Jackson dataformat module must be on the class path
+ * ({@code com.fasterxml.jackson.dataformat:jackson-dataformat-smile},
+ * {@code com.fasterxml.jackson.dataformat:jackson-dataformat-cbor}, or
+ * {@code org.msgpack:jackson-dataformat-msgpack}) and the format must be
+ * named in a protocol interface or method
+ * {@link javax.ws.rs.Consumes} or {@link javax.ws.rs.Produces}
+ * {@link java.lang.annotation.Annotation}.  The {@code Accept} header
+ * generated from {@link javax.ws.rs.Consumes} prefers the available
+ * binary formats (the other types are sent with {@code q=0.9}).
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+public enum JacksonDataFormat {
+    JSON("com.fasterxml.jackson.core.JsonFactory",
+         "application/json"),
+    SMILE("com.fasterxml.jackson.dataformat.smile.SmileFactory",
+          "application/x-jackson-smile"),
+    CBOR("com.fasterxml.jackson.dataformat.cbor.CBORFactory",
+         "application/cbor"),
+    MSGPACK("org.msgpack.jackson.dataformat.MessagePackFactory",
+            "application/x-msgpack", "application/msgpack");
+
+    private final String factory;
+    private final List<String> types;
+    private volatile Boolean available = null;
+
+    private JacksonDataFormat(String factory, String... types) {
+        this.factory = factory;
+        this.types = unmodifiableList(Arrays.asList(types));
+    }
+
+    /**
+     * @return  The preferred MIME type.
+     */
+    public String getMimeType() { return types.get(0); }
+
+    /**
+     * @return  All MIME types recognized for {@link.this} format.
+     */
+    public List<String> getMimeTypes() { return types; }
+
+    /**
+     * @return  The {@link ContentType} for request entities.
+     */
+    public ContentType getContentType() {
+        return (this == JSON) ? ContentType.APPLICATION_JSON : ContentType.create(getMimeType());
+    }
+
+    /**
+     * @return  {@code true} if the {@link JsonFactory} implementation is
+     *          on the class path; {@code false} otherwise.
+     */
+    public boolean isAvailable() {
+        if (available == null) {
+            boolean value = false;
+
+            try {
+                Class.forName(factory, false, getClass().getClassLoader());
+                value = true;
+            } catch (ClassNotFoundException | LinkageError exception) {
+            }
+
+            available = value;
+        }
+
+        return available;
+    }
+
+    /**
+     * Method to create a new {@link JsonFactory} for {@link.this} format.
+     *
+     * @return  The new {@link JsonFactory}.
+     *
+     * @throws  IllegalStateException
+     *                          If the {@link JsonFactory} implementation
+     *                          cannot be loaded.
+     */
+    public JsonFactory newJsonFactory() {
+        try {
+            return
+                Class.forName(factory, true, getClass().getClassLoader())
+                .asSubclass(JsonFactory.class)
+                .getConstructor()
+                .newInstance();
+        } catch (Exception exception) {
+            throw new IllegalStateException(getMimeType(), exception);
+        }
+    }
+
+    /**
+     * Static method to find the {@link JacksonDataFormat} for a MIME
+     * type.
+     *
+     * @param   type            The MIME type (parameters are ignored).
+     *
+     * @return  The {@link JacksonDataFormat} if one matches;
+     *          {@code null} otherwise.
+     */
+    public static JacksonDataFormat forMimeType(String type) {
+        JacksonDataFormat format = null;
+
+        if (type != null) {
+            String mime = ContentType.parseLenient(type).getMimeType();
+
+            for (JacksonDataFormat value : values()) {
+                if (value.types.stream().anyMatch(t -> t.equalsIgnoreCase(mime))) {
+                    format = value;
+                    break;
+                }
+            }
+        }
+
+        return format;
+    }
+}
@@ -0,0 +1,215 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.ToString;
+
+/**
+ * Lock-free, fixed-size, log-linear latency histogram (in the style of
+ * HdrHistogram).  Values are non-negative {@code long}s (typically
+ * nanoseconds); each power-of-two range is divided into
+ * {@value #SUB_BUCKETS} linear sub-buckets so recorded values are
+ * reported with a relative error of at most 1/{@value #SUB_BUCKETS}.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "count", "min", "max" })
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of linear sub-buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int LINEAR = SUB_BUCKETS << 1;
+    private static final int LENGTH = LINEAR + (Long.SIZE - 1 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Sole constructor.
+     */
+    public LatencyHistogram() { }
+
+    /**
+     * Method to record a value.
+     *
+     * @param   value           The value (negative values are recorded as
+     *                          {@code 0}).
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Method to record a value measured by a client that waits for each
+     * response before sending the next request, correcting for
+     * coordinated omission: if {@code value} exceeds
+     * {@code expectedInterval}, the values the delayed requests would
+     * have observed ({@code value - expectedInterval},
+     * {@code value - 2 * expectedInterval}, ...) are also recorded.
+     *
+     * @param   value           The value.
+     * @param   expectedInterval
+     *                          The expected interval between requests
+     *                          ({@code <= 0} to disable correction).
+     */
+    public void record(long value, long expectedInterval) {
+        record(value);
+
+        if (expectedInterval > 0) {
+            for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+                record(missing);
+            }
+        }
+    }
+
+    /**
+     * @return  The number of recorded values.
+     */
+    public long getCount() { return count.get(); }
+
+    /**
+     * @return  The minimum recorded value ({@code 0} if none).
+     */
+    public long getMin() { return (getCount() > 0) ? min.get() : 0; }
+
+    /**
+     * @return  The maximum recorded value ({@code 0} if none).
+     */
+    public long getMax() { return max.get(); }
+
+    /**
+     * @return  The mean of the recorded values ({@code 0} if none).
+     */
+    public double getMean() {
+        long count = getCount();
+
+        return (count > 0) ? ((double) sum.get()) / count : 0;
+    }
+
+    /**
+     * Method to get the value at a percentile.
+     *
+     * @param   percentile      The percentile ({@code 0.0} to
+     *                          {@code 100.0}).
+     *
+     * @return  The (highest equivalent) value at or below which
+     *          {@code percentile} percent of the recorded values fall
+     *          ({@code 0} if none).
+     */
+    public long getValueAtPercentile(double percentile) {
+        long value = 0;
+        long total = getCount();
+
+        if (total > 0) {
+            long target = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total));
+            long seen = 0;
+
+            for (int i = 0; i < LENGTH; i += 1) {
+                seen += counts.get(i);
+
+                if (seen >= target) {
+                    value = Math.min(highest(i), getMax());
+                    break;
+                }
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Method to add the values recorded in another
+     * {@link LatencyHistogram} to {@link.this}.
+     *
+     * @param   that            The other {@link LatencyHistogram}.
+     */
+    public void add(LatencyHistogram that) {
+        for (int i = 0; i < LENGTH; i += 1) {
+            long n = that.counts.get(i);
+
+            if (n > 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+
+        count.addAndGet(that.count.get());
+        sum.addAndGet(that.sum.get());
+        min.accumulateAndGet(that.min.get(), Math::min);
+        max.accumulateAndGet(that.max.get(), Math::max);
+    }
+
+    /**
+     * Method to discard all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < LENGTH; i += 1) {
+            counts.set(i, 0);
+        }
+
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        int index = 0;
+
+        if (value < LINEAR) {
+            index = (int) value;
+        } else {
+            int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+
+            index = LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+
+        return index;
+    }
+
+    private static long highest(int index) {
+        long value = 0;
+
+        if (index < LINEAR) {
+            value = index;
+        } else {
+            int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+            long mantissa = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+
+            value = ((mantissa + 1) << shift) - 1;
+        }
+
+        return value;
+    }
+}
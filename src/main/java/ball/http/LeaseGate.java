@@ -0,0 +1,299 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.ToString;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.Timeout;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Priority-ordered gate in front of a connection pool's leases.  Each
+ * route admits at most the pool's maximum connections per route (and
+ * total) leases at once; when the route is saturated, waiters are
+ * admitted in {@link LeasePriority} order (highest first; FIFO within
+ * a priority) as leases are released.  Connections may be reserved for
+ * priorities at or above a threshold (see
+ * {@link #reserve(int,int)}).  Locks (rather than {@code synchronized})
+ * so waiting does not pin a virtual thread's carrier.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "reservations" })
+class LeaseGate {
+    private static final Comparator<Waiter> ORDER =
+        Comparator.<Waiter>comparingInt(t -> - t.priority).thenComparingLong(t -> t.sequence);
+
+    private final ConnPoolControl<HttpRoute> pool;
+    private final ConcurrentHashMap<HttpRoute,Route> routes = new ConcurrentHashMap<>();
+    private final TreeMap<Integer,Integer> reservations = new TreeMap<>();
+
+    /**
+     * Sole constructor.
+     *
+     * @param   pool            The pool's {@link ConnPoolControl}.
+     */
+    public LeaseGate(ConnPoolControl<HttpRoute> pool) {
+        this.pool = requireNonNull(pool, "pool");
+    }
+
+    /**
+     * Method to reserve {@code connections} of each route's capacity for
+     * leases with priority {@code priority} or higher.  Reservations for
+     * different priorities accumulate: a lease is admitted only if the
+     * connections reserved for higher priorities remain available.  The
+     * total reserved must leave at least one connection of the pool's
+     * default per-route (and total) capacity unreserved; on a route with
+     * a smaller limit the reservations are clamped so the lowest
+     * priority may still lease one connection.
+     *
+     * @param   priority        The minimum priority.
+     * @param   connections     The number of connections to reserve
+     *                          ({@code 0} to remove the reservation).
+     *
+     * @throws  IllegalArgumentException
+     *                          If {@code connections} is negative or the
+     *                          total reserved would reach the pool's
+     *                          capacity.
+     */
+    public void reserve(int priority, int connections) {
+        if (connections < 0) {
+            throw new IllegalArgumentException("connections=" + connections);
+        }
+
+        synchronized (reservations) {
+            int limit = Math.min(pool.getDefaultMaxPerRoute(), pool.getMaxTotal());
+            int total = connections;
+
+            for (int count : reservations.tailMap(priority, false).values()) {
+                total += count;
+            }
+
+            for (int count : reservations.headMap(priority, false).values()) {
+                total += count;
+            }
+
+            if (total >= limit) {
+                throw new IllegalArgumentException("Total reserved connections (" + total
+                                                   + ") must be less than the pool capacity (" + limit + ")");
+            }
+
+            if (connections > 0) {
+                reservations.put(priority, connections);
+            } else {
+                reservations.remove(priority);
+            }
+        }
+
+        routes.values().forEach(Route::signal);
+    }
+
+    private int reserved(int priority) {
+        int reserved = 0;
+
+        synchronized (reservations) {
+            for (int count : reservations.tailMap(priority, false).values()) {
+                reserved += count;
+            }
+        }
+
+        return reserved;
+    }
+
+    /**
+     * Method to get the number of leases a route admits at
+     * {@code priority}: the pool's maximum for the route less the
+     * connections reserved for higher priorities.
+     *
+     * @param   route           The {@link HttpRoute}.
+     * @param   priority        The lease priority.
+     *
+     * @return  The capacity (at least {@code 1}).
+     */
+    public int capacity(HttpRoute route, int priority) {
+        return routes.computeIfAbsent(route, Route::new).capacity(priority);
+    }
+
+    /**
+     * Method to wait for admission to lease a connection for a route.
+     *
+     * @param   route           The {@link HttpRoute}.
+     * @param   waiter          The {@link Waiter}.
+     * @param   timeout         The maximum time to wait ({@code null} or
+     *                          disabled to wait indefinitely).
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting.
+     * @throws  TimeoutException
+     *                          If {@code timeout} expires.
+     * @throws  CancellationException
+     *                          If the {@link Waiter} is cancelled.
+     */
+    public void acquire(HttpRoute route, Waiter waiter, Timeout timeout) throws InterruptedException,
+                                                                                TimeoutException {
+        routes.computeIfAbsent(route, Route::new).acquire(waiter, timeout);
+    }
+
+    /**
+     * Method to release an admission acquired with
+     * {@link #acquire(HttpRoute,Waiter,Timeout)}.
+     *
+     * @param   route           The {@link HttpRoute}.
+     */
+    public void release(HttpRoute route) {
+        Route queue = routes.get(route);
+
+        if (queue != null) {
+            queue.release();
+        }
+    }
+
+    /**
+     * Lease waiter.
+     */
+    @ToString(of = { "priority" })
+    public static class Waiter {
+        private final int priority;
+        private long sequence = 0;
+        private volatile Route route = null;
+        private volatile boolean cancelled = false;
+
+        /**
+         * Sole constructor.
+         *
+         * @param   priority        The lease priority.
+         */
+        public Waiter(int priority) { this.priority = priority; }
+
+        /**
+         * Method to cancel the wait.
+         *
+         * @return  {@code true} if the {@link Waiter} was waiting;
+         *          {@code false} otherwise.
+         */
+        public boolean cancel() {
+            cancelled = true;
+
+            Route route = this.route;
+
+            if (route != null) {
+                route.signal();
+            }
+
+            return route != null;
+        }
+
+        /**
+         * @return  {@code true} if {@link #cancel()} has been called;
+         *          {@code false} otherwise.
+         */
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    @ToString(of = { "route", "leased" })
+    private class Route {
+        private final HttpRoute route;
+        private final Lock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(ORDER);
+        private long sequence = 0;
+        private int leased = 0;
+
+        public Route(HttpRoute route) { this.route = route; }
+
+        private int capacity(int priority) {
+            int limit = Math.min(pool.getMaxPerRoute(route), pool.getMaxTotal());
+
+            return limit - Math.min(reserved(priority), limit - 1);
+        }
+
+        public void acquire(Waiter waiter, Timeout timeout) throws InterruptedException, TimeoutException {
+            long nanos = (timeout != null && (! timeout.isDisabled())) ? timeout.toNanoseconds() : -1;
+            long deadline = System.nanoTime() + nanos;
+
+            lock.lock();
+
+            try {
+                waiter.sequence = sequence++;
+                waiter.route = this;
+                waiters.add(waiter);
+
+                try {
+                    while (! (waiters.peek() == waiter && leased < capacity(waiter.priority))) {
+                        if (waiter.cancelled) {
+                            throw new CancellationException("Lease cancelled");
+                        }
+
+                        if (nanos < 0) {
+                            changed.await();
+                        } else {
+                            long remaining = deadline - System.nanoTime();
+
+                            if (remaining <= 0) {
+                                throw new TimeoutException("Timeout waiting for lease admission: " + route);
+                            }
+
+                            changed.awaitNanos(remaining);
+                        }
+                    }
+
+                    leased += 1;
+                } finally {
+                    waiters.remove(waiter);
+                    waiter.route = null;
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void release() {
+            lock.lock();
+
+            try {
+                leased = Math.max(0, leased - 1);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void signal() {
+            lock.lock();
+
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.http.annotation.Priority;
+import java.lang.reflect.Method;
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Per-call connection lease priority.  The priority in effect on the
+ * current {@link Thread} (see {@link #enter(int)}) overrides the
+ * protocol method's (or interface's) {@link Priority} annotation.  For
+ * example:
+ * <pre>{@code
+ * try (LeasePriority.Scope scope = LeasePriority.enter(Priority.LOW)) {
+ *     client.proxy().reindex(...);
+ * }
+ * }</pre>
+ * As with {@link Priority}, the priority is enforced only by a
+ * {@link ProtocolClient} that knows its connection pool (see
+ * {@link ProtocolClient#manager()}).
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class LeasePriority {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Static method to put a priority in effect on the current
+     * {@link Thread} until the returned {@link Scope} is closed.
+     *
+     * @param   priority        The priority (see {@link Priority}).
+     *
+     * @return  The {@link Scope}.
+     */
+    public static Scope enter(int priority) {
+        Integer previous = CURRENT.get();
+
+        CURRENT.set(priority);
+
+        return new Scope(previous);
+    }
+
+    /**
+     * Static method to get the priority of a lease on the current
+     * {@link Thread}: the priority in effect (see {@link #enter(int)}),
+     * else the {@link Priority} of the {@link ProtocolCall#current()}
+     * call's {@link Method} (or its interface), else
+     * {@link Priority#NORMAL}.
+     *
+     * @return  The priority.
+     */
+    public static int current() {
+        Integer priority = CURRENT.get();
+
+        if (priority == null) {
+            ProtocolCall call = ProtocolCall.current();
+            Method method = (call != null) ? call.getMethod() : null;
+            Priority annotation = null;
+
+            if (method != null) {
+                annotation = method.getAnnotation(Priority.class);
+
+                if (annotation == null) {
+                    annotation = method.getDeclaringClass().getAnnotation(Priority.class);
+                }
+            }
+
+            priority = (annotation != null) ? annotation.value() : Priority.NORMAL;
+        }
+
+        return priority;
+    }
+
+    /**
+     * Static method to get the priority explicitly put in effect on the
+     * current {@link Thread} (see {@link #enter(int)}).
+     *
+     * @return  The priority ({@code null} if none).
+     */
+    static Integer explicit() { return CURRENT.get(); }
+
+    /**
+     * {@link LeasePriority} scope (see {@link #enter(int)}).  Closing the
+     * {@link Scope} restores the previous priority.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Integer previous;
+
+        private Scope(Integer previous) { this.previous = previous; }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Streaming decoder for numeric arrays that avoids boxing.  Supports
+ * {@code long[]}, {@code int[]}, and {@code double[]}, columnar
+ * {@link Map}s of {@link String} to any of the preceding, and (only if
+ * {@link ProtocolClient#isPrimitiveListDecodingEnabled()}) {@link List}
+ * (or {@link Collection} or {@link Iterable}) of {@link Long},
+ * {@link Integer}, or {@link Double} returned as unmodifiable
+ * primitive-backed {@link List}s.  As with Jackson's defaults, quoted
+ * numbers are coerced and {@code null} array elements decode as
+ * {@code 0} (unless
+ * {@link DeserializationFeature#FAIL_ON_NULL_FOR_PRIMITIVES} is
+ * enabled); {@code null} {@link List} elements are not supported.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class NumericArrayDecoder {
+    private static final int CAPACITY = 64;
+
+    /**
+     * Static method to determine if a {@link Type} is supported.
+     *
+     * @param   type            The {@link Type}.
+     * @param   lists           Whether boxed numeric {@link List}s are
+     *                          decoded as primitive-backed {@link List}s.
+     *
+     * @return  {@code true} if supported; {@code false} otherwise.
+     */
+    public static boolean isSupported(Type type, boolean lists) {
+        boolean supported = false;
+
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == Map.class) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+
+            supported = (arguments[0] == String.class && kind(arguments[1], lists) != null);
+        } else {
+            supported = (kind(type, lists) != null);
+        }
+
+        return supported;
+    }
+
+    /**
+     * Static method to decode the next value from a {@link JsonParser}.
+     *
+     * @param   mapper          The {@link ObjectMapper} (for its
+     *                          {@link DeserializationFeature}s).
+     * @param   parser          The {@link JsonParser}.
+     * @param   type            The (supported) {@link Type}.
+     *
+     * @return  The decoded {@link Object}.
+     *
+     * @throws  IOException     If the input cannot be decoded.
+     */
+    public static Object decode(ObjectMapper mapper, JsonParser parser, Type type) throws IOException {
+        Object object = null;
+        boolean nulls = (! mapper.isEnabled(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES));
+        JsonToken token = parser.nextToken();
+
+        if (token != null && token != JsonToken.VALUE_NULL) {
+            if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == Map.class) {
+                Type value = ((ParameterizedType) type).getActualTypeArguments()[1];
+                LinkedHashMap<String,Object> map = new LinkedHashMap<>();
+
+                expect(parser, token, JsonToken.START_OBJECT);
+
+                while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+
+                    token = parser.nextToken();
+                    map.put(name, (token != JsonToken.VALUE_NULL) ? decode(parser, token, value, nulls) : null);
+                }
+
+                expect(parser, token, JsonToken.END_OBJECT);
+
+                object = map;
+            } else {
+                object = decode(parser, token, type, nulls);
+            }
+        }
+
+        return object;
+    }
+
+    private static Object decode(JsonParser parser, JsonToken token, Type type, boolean nulls) throws IOException {
+        Object object = null;
+        Kind kind = kind(type, true);
+
+        nulls &= kind.array;
+
+        expect(parser, token, JsonToken.START_ARRAY);
+
+        switch (kind.primitive) {
+        case 'J':
+            long[] longs = new long[CAPACITY];
+            int nlongs = 0;
+
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (nlongs == longs.length) {
+                    longs = Arrays.copyOf(longs, longs.length << 1);
+                }
+
+                if (number(parser, token, nulls)) {
+                    longs[nlongs++] = (token == JsonToken.VALUE_STRING) ? Long.parseLong(text(parser)) : parser.getLongValue();
+                } else {
+                    longs[nlongs++] = 0;
+                }
+            }
+
+            object = kind.array ? Arrays.copyOf(longs, nlongs) : new LongList(longs, nlongs);
+            break;
+
+        case 'I':
+            int[] ints = new int[CAPACITY];
+            int nints = 0;
+
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (nints == ints.length) {
+                    ints = Arrays.copyOf(ints, ints.length << 1);
+                }
+
+                if (number(parser, token, nulls)) {
+                    ints[nints++] = (token == JsonToken.VALUE_STRING) ? Integer.parseInt(text(parser)) : parser.getIntValue();
+                } else {
+                    ints[nints++] = 0;
+                }
+            }
+
+            object = kind.array ? Arrays.copyOf(ints, nints) : new IntList(ints, nints);
+            break;
+
+        default:
+            double[] doubles = new double[CAPACITY];
+            int ndoubles = 0;
+
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (ndoubles == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, doubles.length << 1);
+                }
+
+                if (number(parser, token, nulls)) {
+                    doubles[ndoubles++] = (token == JsonToken.VALUE_STRING) ? Double.parseDouble(text(parser)) : parser.getDoubleValue();
+                } else {
+                    doubles[ndoubles++] = 0;
+                }
+            }
+
+            object = kind.array ? Arrays.copyOf(doubles, ndoubles) : new DoubleList(doubles, ndoubles);
+            break;
+        }
+
+        return object;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + token);
+        }
+    }
+
+    /*
+     * Returns true if the token is a number (or a quoted number); false
+     * if the token is an allowed null.
+     */
+    private static boolean number(JsonParser parser, JsonToken token, boolean nulls) throws IOException {
+        boolean number = true;
+
+        if (token == JsonToken.VALUE_NULL && nulls) {
+            number = false;
+        } else if (token == null || (! (token.isNumeric() || token == JsonToken.VALUE_STRING))) {
+            throw new JsonParseException(parser, "Expected a number but found " + token);
+        }
+
+        return number;
+    }
+
+    private static String text(JsonParser parser) throws IOException {
+        String text = parser.getText().trim();
+
+        if (text.isEmpty()) {
+            throw new JsonParseException(parser, "Expected a number but found \"\"");
+        }
+
+        return text;
+    }
+
+    private static Kind kind(Type type, boolean lists) {
+        Kind kind = null;
+
+        if (type == long[].class) {
+            kind = Kind.LONG_ARRAY;
+        } else if (type == int[].class) {
+            kind = Kind.INT_ARRAY;
+        } else if (type == double[].class) {
+            kind = Kind.DOUBLE_ARRAY;
+        } else if (lists && type instanceof ParameterizedType) {
+            Type raw = ((ParameterizedType) type).getRawType();
+
+            if (raw == List.class || raw == Collection.class || raw == Iterable.class) {
+                Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+
+                if (argument == Long.class) {
+                    kind = Kind.LONG_LIST;
+                } else if (argument == Integer.class) {
+                    kind = Kind.INT_LIST;
+                } else if (argument == Double.class) {
+                    kind = Kind.DOUBLE_LIST;
+                }
+            }
+        }
+
+        return kind;
+    }
+
+    private enum Kind {
+        LONG_ARRAY('J', true), INT_ARRAY('I', true), DOUBLE_ARRAY('D', true),
+        LONG_LIST('J', false), INT_LIST('I', false), DOUBLE_LIST('D', false);
+
+        private final char primitive;
+        private final boolean array;
+
+        private Kind(char primitive, boolean array) {
+            this.primitive = primitive;
+            this.array = array;
+        }
+    }
+
+    /**
+     * {@code long[]}-backed (unmodifiable) {@link List}.
+     */
+    private static class LongList extends AbstractList<Long> implements RandomAccess {
+        private final long[] array;
+        private final int size;
+
+        public LongList(long[] array, int size) {
+            this.array = array;
+            this.size = size;
+        }
+
+        @Override
+        public Long get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+
+            return array[index];
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+
+    /**
+     * {@code int[]}-backed (unmodifiable) {@link List}.
+     */
+    private static class IntList extends AbstractList<Integer> implements RandomAccess {
+        private final int[] array;
+        private final int size;
+
+        public IntList(int[] array, int size) {
+            this.array = array;
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+
+            return array[index];
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+
+    /**
+     * {@code double[]}-backed (unmodifiable) {@link List}.
+     */
+    private static class DoubleList extends AbstractList<Double> implements RandomAccess {
+        private final double[] array;
+        private final int size;
+
+        public DoubleList(double[] array, int size) {
+            this.array = array;
+            this.size = size;
+        }
+
+        @Override
+        public Double get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+
+            return array[index];
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+}
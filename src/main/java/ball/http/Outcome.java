@@ -0,0 +1,107 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.concurrent.ExecutionException;
+import lombok.ToString;
+
+/**
+ * The outcome of one call of a
+ * {@link ProtocolClient#fanOut(ProtocolFunction,Iterable)}: either the
+ * call's result or the {@link Throwable} it failed with.
+ *
+ * @param       <A>             The argument (tuple) type.
+ * @param       <R>             The result type.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString
+public class Outcome<A,R> {
+    private final int index;
+    private final A argument;
+    private final R value;
+    private final Throwable failure;
+    private final long elapsed;
+
+    /**
+     * Sole constructor.
+     *
+     * @param   index           The index of the argument.
+     * @param   argument        The argument (tuple).
+     * @param   value           The result (if successful).
+     * @param   failure         The {@link Throwable} (if failed).
+     * @param   elapsed         The call duration (in nanoseconds).
+     */
+    protected Outcome(int index, A argument, R value, Throwable failure, long elapsed) {
+        this.index = index;
+        this.argument = argument;
+        this.value = value;
+        this.failure = failure;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return  The index of the argument in the argument sequence.
+     */
+    public int getIndex() { return index; }
+
+    /**
+     * @return  The argument (tuple).
+     */
+    public A getArgument() { return argument; }
+
+    /**
+     * @return  The result ({@code null} if the call failed).
+     */
+    public R getValue() { return value; }
+
+    /**
+     * @return  The {@link Throwable} the call failed with
+     *          ({@code null} if successful).
+     */
+    public Throwable getFailure() { return failure; }
+
+    /**
+     * @return  The call duration (in nanoseconds).
+     */
+    public long getElapsed() { return elapsed; }
+
+    /**
+     * @return  {@code true} if the call succeeded; {@code false}
+     *          otherwise.
+     */
+    public boolean isSuccess() { return failure == null; }
+
+    /**
+     * Method to get the result or rethrow the failure.
+     *
+     * @return  The result.
+     *
+     * @throws  ExecutionException
+     *                          If the call failed (with the failure as
+     *                          its cause).
+     */
+    public R get() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,422 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.http.annotation.Paginated;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.ToString;
+import org.apache.commons.lang3.reflect.TypeUtils;
+import org.apache.hc.client5.http.ClientProtocolException;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.NameValuePair;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.net.URIBuilder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Paginated} implementation: a lazy {@link Iterator} (or
+ * {@link Stream}) over the items of successive pages.  Each page is
+ * fetched (and tracked as a {@link ProtocolCall}) on the
+ * {@link ProtocolExecutors#executor()} up to {@link Paginated#prefetch()}
+ * pages ahead of the consumer.  Closing the {@link Stream} cancels the
+ * pages not yet fetched.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString
+class Paginator {
+    private static final Pattern LINK =
+        Pattern.compile("<([^>]*)>((?:\\s*;\\s*[^;,=]+(?:=(?:\"[^\"]*\"|[^;,]*))?)*)");
+    private static final Pattern NEXT =
+        Pattern.compile("(?i);\\s*rel\\s*=\\s*(?:\"[^\"]*\\bnext\\b[^\"]*\"|next\\b)");
+
+    private final ProtocolClient<?> client;
+    private final Method method;
+    private final Paginated annotation;
+    private final String template;
+    private final ObjectReader reader;
+    private final HttpContext context;
+
+    /**
+     * Sole constructor.
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   method          The protocol {@link Method}.
+     * @param   template        The method's URI template.
+     * @param   context         The call's {@link HttpContext} (see
+     *                          {@link ProtocolClient#context()}).
+     */
+    public Paginator(ProtocolClient<?> client, Method method, String template, HttpContext context) {
+        this.client = requireNonNull(client, "client");
+        this.context = requireNonNull(context, "context");
+        this.method = requireNonNull(method, "method");
+        this.annotation = requireNonNull(method.getAnnotation(Paginated.class), "annotation");
+        this.template = template;
+        this.reader =
+            client.getObjectMapper()
+            .readerFor(client.getObjectMapper().constructType(getElementType(method)));
+    }
+
+    /**
+     * Static method to determine if a protocol method return type is
+     * supported.
+     *
+     * @param   type            The return type.
+     *
+     * @return  {@code true} if supported; {@code false} otherwise.
+     */
+    public static boolean isSupported(Class<?> type) {
+        return type == Stream.class || type == Iterator.class;
+    }
+
+    /**
+     * Static method to get the element type of a {@link Paginated}
+     * method's {@link Stream} or {@link Iterator} return type.
+     *
+     * @param   method          The protocol {@link Method}.
+     *
+     * @return  The element {@link Type} ({@link JsonNode} if not
+     *          specified).
+     */
+    public static Type getElementType(Method method) {
+        Class<?> raw = method.getReturnType();
+        TypeVariable<?> variable = raw.getTypeParameters()[0];
+        Type type = TypeUtils.getTypeArguments(method.getGenericReturnType(), raw).get(variable);
+
+        return (type == null || type instanceof TypeVariable<?>) ? JsonNode.class : type;
+    }
+
+    /**
+     * Method to iterate the pages starting with {@code request}.  No
+     * request is sent before the first {@link Iterator#hasNext()} (or
+     * {@link Stream} terminal operation).
+     *
+     * @param   request         The first page (GET)
+     *                          {@link ClassicHttpRequest}.
+     * @param   type            The return type (see
+     *                          {@link #isSupported(Class)}).
+     *
+     * @return  The {@link Stream} or {@link Iterator}.
+     *
+     * @throws  UnsupportedOperationException
+     *                          If {@code request} is not a GET.
+     */
+    public Object paginate(ClassicHttpRequest request, Class<?> type) {
+        if (! HttpGet.METHOD_NAME.equalsIgnoreCase(request.getMethod())) {
+            throw new UnsupportedOperationException(request.getMethod() + " cannot be paginated: " + method);
+        }
+
+        Items items = new Items(request);
+        Object result = items;
+
+        if (type == Stream.class) {
+            result =
+                StreamSupport.stream(Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED), false)
+                .onClose(items::close);
+        }
+
+        return result;
+    }
+
+    private Page fetch(ClassicHttpRequest request, long offset) throws IOException {
+        ProtocolCall call = ProtocolCall.begin(client, method);
+        Throwable failure = null;
+
+        try {
+            call.built(request, template);
+
+            return client.client().execute(request, context, response -> page(request, offset, response));
+        } catch (IOException | RuntimeException exception) {
+            failure = exception;
+
+            throw exception;
+        } finally {
+            call.end(failure);
+        }
+    }
+
+    private Page page(ClassicHttpRequest request, long offset, ClassicHttpResponse response) throws IOException {
+        int code = response.getCode();
+
+        if (code < 200 || code >= 300) {
+            throw new HttpResponseException(code, response.getReasonPhrase());
+        }
+
+        Object object = null;
+
+        try {
+            object = new ProtocolResponseHandler(client, method, JsonNode.class).handleEntity(response.getEntity());
+        } catch (IOException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new ClientProtocolException(exception);
+        }
+
+        if (! (object instanceof JsonNode)) {
+            throw new ClientProtocolException("Page is not a JSON document: " + request);
+        }
+
+        JsonNode node = (JsonNode) object;
+        JsonNode array = node.at(annotation.items());
+        List<Object> items = new ArrayList<>();
+
+        if (array.isArray()) {
+            for (JsonNode item : array) {
+                items.add(reader.readValue(item));
+            }
+        } else if (! (array.isMissingNode() || array.isNull())) {
+            throw new ClientProtocolException("Page items \"" + annotation.items() + "\" is not an array");
+        }
+
+        ClassicHttpRequest next = null;
+
+        try {
+            switch (annotation.value()) {
+            case LINK:
+                URI uri = getNextLink(response);
+
+                if (uri != null) {
+                    next = next(request, request.getUri().resolve(uri));
+                }
+                break;
+
+            case CURSOR:
+                JsonNode cursor = node.at(annotation.cursor());
+
+                if (! (cursor.isMissingNode() || cursor.isNull() || cursor.asText().isEmpty())) {
+                    next = next(request, parameter(request.getUri(), "cursor", cursor.asText()));
+                }
+                break;
+
+            case OFFSET:
+                if (! items.isEmpty()) {
+                    offset += items.size();
+                    next = next(request, parameter(request.getUri(), "offset", String.valueOf(offset)));
+                }
+                break;
+            }
+        } catch (Exception exception) {
+            throw new ClientProtocolException(exception);
+        }
+
+        return new Page(items, next, offset);
+    }
+
+    private URI getNextLink(ClassicHttpResponse response) {
+        URI uri = null;
+
+        for (Header header : response.getHeaders(HttpHeaders.LINK)) {
+            Matcher matcher = LINK.matcher(header.getValue());
+
+            while (uri == null && matcher.find()) {
+                if (NEXT.matcher(matcher.group(2)).find()) {
+                    uri = URI.create(matcher.group(1).trim());
+                }
+            }
+        }
+
+        return uri;
+    }
+
+    private URI parameter(URI uri, String name, String value) throws Exception {
+        if (! annotation.parameter().isEmpty()) {
+            name = annotation.parameter();
+        }
+
+        return new URIBuilder(uri).setParameter(name, value).build();
+    }
+
+    private long getInitialOffset(ClassicHttpRequest request) {
+        long offset = 0;
+
+        if (annotation.value() == Paginated.Scheme.OFFSET) {
+            String name = annotation.parameter().isEmpty() ? "offset" : annotation.parameter();
+
+            try {
+                for (NameValuePair pair : new URIBuilder(request.getUri()).getQueryParams()) {
+                    if (pair.getName().equals(name) && pair.getValue() != null) {
+                        offset = Long.parseLong(pair.getValue());
+                    }
+                }
+            } catch (Exception exception) {
+            }
+        }
+
+        return offset;
+    }
+
+    private ClassicHttpRequest next(ClassicHttpRequest request, URI uri) {
+        HttpGet next = new HttpGet(uri);
+
+        if (request instanceof HttpUriRequestBase) {
+            next.setConfig(((HttpUriRequestBase) request).getConfig());
+        }
+        /*
+         * The deadline header (if any) is reset to the time remaining
+         * when the page is sent.
+         */
+        for (Header header : request.getHeaders()) {
+            next.addHeader(header);
+        }
+
+        return next;
+    }
+
+    @ToString
+    private static class Page {
+        public static final Page END = new Page(Collections.emptyList(), null, 0);
+
+        public final List<Object> items;
+        public final ClassicHttpRequest next;
+        public final long offset;
+
+        public Page(List<Object> items, ClassicHttpRequest next, long offset) {
+            this.items = items;
+            this.next = next;
+            this.offset = offset;
+        }
+    }
+
+    @ToString(of = { "current" })
+    private class Items implements Iterator<Object>, AutoCloseable {
+        private final ArrayDeque<CompletableFuture<Page>> queue = new ArrayDeque<>();
+        private final ClassicHttpRequest first;
+        private CompletableFuture<Page> tail = null;
+        private Page current = null;
+        private Iterator<Object> iterator = Collections.emptyIterator();
+        private boolean closed = false;
+
+        public Items(ClassicHttpRequest first) {
+            this.first = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (! (closed || iterator.hasNext())) {
+                if (current != null && current.next == null) {
+                    break;
+                }
+
+                CompletableFuture<Page> future = queue.poll();
+
+                if (future == null) {
+                    future = request(Runnable::run);
+                }
+
+                current = join(future);
+                iterator = current.items.iterator();
+
+                fill();
+            }
+
+            return (! closed) && iterator.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+
+            queue.forEach(t -> t.cancel(true));
+            queue.clear();
+        }
+
+        private void fill() {
+            while (! closed && queue.size() < annotation.prefetch() && ! isLast(tail)) {
+                queue.add(request(ProtocolExecutors.executor()));
+            }
+        }
+
+        private boolean isLast(CompletableFuture<Page> future) {
+            return (future != null && future.isDone() && (! future.isCompletedExceptionally())
+                    && future.join().next == null);
+        }
+
+        private CompletableFuture<Page> request(Executor executor) {
+            if (tail == null) {
+                tail = CompletableFuture.supplyAsync(() -> fetch(first, getInitialOffset(first)), executor);
+            } else {
+                tail = tail.thenApplyAsync(t -> (t.next != null) ? fetch(t.next, t.offset) : Page.END, executor);
+            }
+
+            return tail;
+        }
+
+        private Page fetch(ClassicHttpRequest request, long offset) {
+            try {
+                return Paginator.this.fetch(request, offset);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        private Page join(CompletableFuture<Page> future) {
+            try {
+                return future.join();
+            } catch (CompletionException exception) {
+                Throwable cause = exception.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw exception;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.ToString;
+
+/**
+ * {@link ProtocolCallListener} that aggregates a {@link LatencyHistogram}
+ * (in nanoseconds) per protocol {@link Method} and
+ * {@link ProtocolCall.Phase} plus one for the total call duration.  Each
+ * call records its total time in every phase it entered.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { })
+public class PhaseHistogramListener implements ProtocolCallListener {
+    private final ConcurrentHashMap<Method,Histograms> map = new ConcurrentHashMap<>();
+
+    /**
+     * Sole constructor.
+     */
+    public PhaseHistogramListener() { }
+
+    @Override
+    public void callEnded(ProtocolCall call) {
+        Histograms histograms = histograms(call.getMethod());
+
+        for (ProtocolCall.Phase phase : ProtocolCall.Phase.values()) {
+            long nanos = call.getDuration(phase);
+
+            if (nanos > 0) {
+                histograms.phases[phase.ordinal()].record(nanos);
+            }
+        }
+
+        histograms.total.record(call.getElapsed());
+    }
+
+    /**
+     * Method to get the {@link LatencyHistogram} for a protocol
+     * {@link Method} and {@link ProtocolCall.Phase}.
+     *
+     * @param   method          The protocol {@link Method}.
+     * @param   phase           The {@link ProtocolCall.Phase}.
+     *
+     * @return  The {@link LatencyHistogram} ({@code null} if no call to
+     *          {@code method} has been observed).
+     */
+    public LatencyHistogram getHistogram(Method method, ProtocolCall.Phase phase) {
+        Histograms histograms = map.get(method);
+
+        return (histograms != null) ? histograms.phases[phase.ordinal()] : null;
+    }
+
+    /**
+     * Method to get the total call duration {@link LatencyHistogram} for
+     * a protocol {@link Method}.
+     *
+     * @param   method          The protocol {@link Method}.
+     *
+     * @return  The {@link LatencyHistogram} ({@code null} if no call to
+     *          {@code method} has been observed).
+     */
+    public LatencyHistogram getTotalHistogram(Method method) {
+        Histograms histograms = map.get(method);
+
+        return (histograms != null) ? histograms.total : null;
+    }
+
+    /**
+     * @return  The per-{@link ProtocolCall.Phase} {@link LatencyHistogram}s
+     *          of every observed protocol {@link Method}.
+     */
+    public Map<Method,Map<ProtocolCall.Phase,LatencyHistogram>> getHistograms() {
+        Map<Method,Map<ProtocolCall.Phase,LatencyHistogram>> result = new LinkedHashMap<>();
+
+        for (Map.Entry<Method,Histograms> entry : map.entrySet()) {
+            EnumMap<ProtocolCall.Phase,LatencyHistogram> phases = new EnumMap<>(ProtocolCall.Phase.class);
+
+            for (ProtocolCall.Phase phase : ProtocolCall.Phase.values()) {
+                phases.put(phase, entry.getValue().phases[phase.ordinal()]);
+            }
+
+            result.put(entry.getKey(), Collections.unmodifiableMap(phases));
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Method to discard all recorded values.
+     */
+    public void reset() { map.clear(); }
+
+    private Histograms histograms(Method method) {
+        Histograms histograms = map.get(method);
+
+        if (histograms == null) {
+            histograms = map.computeIfAbsent(method, k -> new Histograms());
+        }
+
+        return histograms;
+    }
+
+    private static class Histograms {
+        public final LatencyHistogram[] phases = new LatencyHistogram[ProtocolCall.Phase.values().length];
+        public final LatencyHistogram total = new LatencyHistogram();
+
+        public Histograms() {
+            for (int i = 0; i < phases.length; i += 1) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+    }
+}
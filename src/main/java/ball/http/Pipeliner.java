@@ -0,0 +1,364 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import lombok.ToString;
+import org.apache.hc.client5.http.utils.URIUtils;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpMessage;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.impl.bootstrap.AsyncRequesterBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncRequester;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncClientEndpoint;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http.nio.support.BasicResponseConsumer;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * HTTP/1.1 pipelined sender for {@link ProtocolClient#pipeline(int,List)}
+ * and {@link ProtocolClient#pipelineCalls(int,List)}.  Requests are
+ * grouped by target host and sent back-to-back (without waiting for the
+ * previous response) over at most {@code connections} connections per
+ * host with an httpcore5 {@link HttpAsyncRequester}.  Request and
+ * response entities are buffered.  The {@link ProtocolClient}'s
+ * interceptor methods are applied to every request and response; the
+ * {@link ProtocolClient#client()} (and its connection pool,
+ * configuration, and interceptors) is not used and the calls are not
+ * tracked as {@link ProtocolCall}s.  Only idempotent requests may be
+ * pipelined.  Connecting and waiting for the responses are limited by
+ * the timeout and the current {@link Deadline}.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString
+class Pipeliner {
+    private final ProtocolClient<?> client;
+    private final int connections;
+    private final TlsStrategy tls;
+    private final Timeout timeout;
+
+    /**
+     * Sole constructor.
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   connections     The maximum number of connections per
+     *                          host.
+     * @param   tls             The {@link TlsStrategy} ({@code null} for
+     *                          the JVM default {@link javax.net.ssl.SSLContext}).
+     * @param   timeout         The maximum time to connect and receive
+     *                          every response ({@code null} or disabled
+     *                          for no limit other than the current
+     *                          {@link Deadline}).
+     */
+    public Pipeliner(ProtocolClient<?> client, int connections, TlsStrategy tls, Timeout timeout) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections=" + connections);
+        }
+
+        this.client = requireNonNull(client, "client");
+        this.connections = connections;
+        this.tls = tls;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Method to record the requests the {@code calls} would send.  Each
+     * {@link Consumer} must invoke one protocol method on the argument
+     * proxy.
+     *
+     * @param   <P>             The protocol type.
+     * @param   protocol        The protocol {@link Class}.
+     * @param   calls           The {@link Consumer}s.
+     *
+     * @return  The recorded {@link Method}s and requests (in order).
+     *
+     * @throws  Throwable       If a request cannot be built.
+     */
+    public <P> List<Map.Entry<Method,ClassicHttpRequest>> record(Class<? extends P> protocol,
+                                                                 List<? extends Consumer<? super P>> calls) throws Throwable {
+        List<Map.Entry<Method,ClassicHttpRequest>> list = new ArrayList<>(calls.size());
+        P proxy =
+            protocol.cast(Proxy.newProxyInstance(protocol.getClassLoader(), new Class<?>[] { protocol }, (p, method, argv) -> {
+                        if (method.getDeclaringClass().equals(Object.class)) {
+                            return method.invoke(this, argv);
+                        }
+
+                        if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                            throw new UnsupportedOperationException(String.valueOf(method));
+                        }
+
+                        HttpMessage request = new ProtocolRequestBuilder(client).build(method, argv);
+
+                        if (! (request instanceof ClassicHttpRequest)) {
+                            throw new IllegalStateException(method + " does not build a request");
+                        }
+
+                        list.add(new AbstractMap.SimpleImmutableEntry<>(method, (ClassicHttpRequest) request));
+
+                        Class<?> type = method.getReturnType();
+
+                        return (type.isPrimitive() && type != Void.TYPE) ? Array.get(Array.newInstance(type, 1), 0) : null;
+                    }));
+
+        for (Consumer<? super P> call : calls) {
+            int size = list.size();
+
+            call.accept(proxy);
+
+            if (list.size() != size + 1) {
+                throw new IllegalArgumentException("Each call must invoke exactly one protocol method");
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Method to de-serialize the pipelined response of a recorded
+     * {@link Method} call.
+     *
+     * @param   method          The protocol {@link Method}.
+     * @param   response        The buffered {@link ClassicHttpResponse}.
+     *
+     * @return  The de-serialized result.
+     *
+     * @throws  Exception       If the response cannot be de-serialized.
+     */
+    public Object decode(Method method, ClassicHttpResponse response) throws Exception {
+        Class<?> type = method.getReturnType();
+        Object result = null;
+
+        if (type.isAssignableFrom(ClassicHttpResponse.class)) {
+            result = response;
+        } else if (type != Void.TYPE) {
+            result = new ProtocolResponseHandler(client, method).handleResponse(response);
+        }
+
+        return result;
+    }
+
+    /**
+     * Method to send the requests.
+     *
+     * @param   requests        The {@link ClassicHttpRequest}s.
+     *
+     * @return  The buffered {@link ClassicHttpResponse}s (in the same
+     *          order as {@code requests}).
+     *
+     * @throws  IllegalArgumentException
+     *                          If any request is not idempotent.
+     * @throws  InterruptedIOException
+     *                          If the timeout (or {@link Deadline})
+     *                          expires.
+     * @throws  IOException     If a request fails.
+     */
+    public List<ClassicHttpResponse> send(List<? extends ClassicHttpRequest> requests) throws IOException {
+        for (ClassicHttpRequest request : requests) {
+            if (! org.apache.hc.core5.http.Method.isIdempotent(request.getMethod())) {
+                throw new IllegalArgumentException(request.getMethod() + " is not idempotent: " + request);
+            }
+        }
+
+        Deadline deadline =
+            Deadline.min(Deadline.current(),
+                         (timeout != null && (! timeout.isDisabled()))
+                             ? Deadline.after(timeout.toMilliseconds(), MILLISECONDS)
+                             : null);
+
+        if (deadline != null) {
+            deadline.check();
+        }
+
+        Map<HttpHost,List<Integer>> hosts = new LinkedHashMap<>();
+
+        for (int i = 0; i < requests.size(); i += 1) {
+            ClassicHttpRequest request = requests.get(i);
+
+            try {
+                client.process(request, request.getEntity(), client.context());
+
+                hosts.computeIfAbsent(URIUtils.extractHost(request.getUri()), k -> new ArrayList<>()).add(i);
+            } catch (IOException exception) {
+                throw exception;
+            } catch (Exception exception) {
+                throw new IOException(String.valueOf(request), exception);
+            }
+        }
+
+        List<Future<Message<HttpResponse,byte[]>>> futures = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i += 1) {
+            futures.add(null);
+        }
+
+        HttpAsyncRequester requester =
+            AsyncRequesterBootstrap.bootstrap()
+            .setTlsStrategy(tls)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                                .setSoTimeout((timeout != null) ? timeout : Timeout.DISABLED)
+                                .build())
+            .create();
+        List<AsyncClientEndpoint> endpoints = new ArrayList<>();
+        CloseMode mode = CloseMode.IMMEDIATE;
+
+        try {
+            requester.start();
+
+            for (Map.Entry<HttpHost,List<Integer>> entry : hosts.entrySet()) {
+                List<Integer> indices = entry.getValue();
+                int n = Math.min(connections, indices.size());
+                List<Future<AsyncClientEndpoint>> connecting = new ArrayList<>(n);
+
+                for (int i = 0; i < n; i += 1) {
+                    connecting.add(requester.connect(entry.getKey(), remaining(deadline)));
+                }
+
+                for (int i = 0; i < n; i += 1) {
+                    AsyncClientEndpoint endpoint = get(connecting.get(i), deadline);
+                    int from = (int) ((long) indices.size() * i / n);
+                    int to = (int) ((long) indices.size() * (i + 1) / n);
+
+                    endpoints.add(endpoint);
+
+                    for (int index : indices.subList(from, to)) {
+                        ClassicHttpRequest request = requests.get(index);
+
+                        futures.set(index,
+                                    endpoint.execute(new BasicRequestProducer(request, producer(request.getEntity())),
+                                                     new BasicResponseConsumer<>(new BasicAsyncEntityConsumer()),
+                                                     null));
+                    }
+                }
+            }
+
+            List<ClassicHttpResponse> responses = new ArrayList<>(requests.size());
+
+            for (Future<Message<HttpResponse,byte[]>> future : futures) {
+                ClassicHttpResponse response = toClassic(get(future, deadline));
+
+                client.process(response, response.getEntity(), client.context());
+                responses.add(response);
+            }
+
+            mode = CloseMode.GRACEFUL;
+
+            return responses;
+        } catch (TimeoutException exception) {
+            throw new InterruptedIOException("Timeout waiting for pipelined responses");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        } catch (IOException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new IOException(exception);
+        } finally {
+            endpoints.forEach(AsyncClientEndpoint::releaseAndDiscard);
+            requester.close(mode);
+        }
+    }
+
+    private Timeout remaining(Deadline deadline) {
+        Timeout remaining = Timeout.DISABLED;
+
+        if (deadline != null) {
+            remaining = Timeout.ofMilliseconds(Math.max(1, deadline.remaining(MILLISECONDS)));
+        }
+
+        return remaining;
+    }
+
+    private <T> T get(Future<T> future, Deadline deadline) throws InterruptedException,
+                                                                  ExecutionException, TimeoutException {
+        return (deadline != null) ? future.get(deadline.remaining(NANOSECONDS), NANOSECONDS) : future.get();
+    }
+
+    private AsyncEntityProducer producer(HttpEntity entity) throws IOException {
+        AsyncEntityProducer producer = null;
+
+        if (entity != null) {
+            String type = entity.getContentType();
+
+            producer =
+                new BasicAsyncEntityProducer(EntityUtils.toByteArray(entity),
+                                             (type != null) ? ContentType.parseLenient(type) : null);
+        }
+
+        return producer;
+    }
+
+    private ClassicHttpResponse toClassic(Message<HttpResponse,byte[]> message) {
+        HttpResponse head = message.getHead();
+        BasicClassicHttpResponse response = new BasicClassicHttpResponse(head.getCode(), head.getReasonPhrase());
+
+        response.setVersion(head.getVersion());
+
+        for (Header header : head.getHeaders()) {
+            response.addHeader(header);
+        }
+
+        if (message.getBody() != null) {
+            Header type = head.getFirstHeader("Content-Type");
+
+            response.setEntity(new ByteArrayEntity(message.getBody(),
+                                                   (type != null) ? ContentType.parseLenient(type.getValue()) : null));
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,267 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.ToString;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link OutputStream} that accumulates bytes in a chain of
+ * {@link BufferPool} buffers.  {@link #close()} returns the buffers to the
+ * pool unless ownership has been transferred with
+ * {@link #toInputStream()}.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "size" })
+public class PooledByteArrayOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current = null;
+    private int position = 0;
+    private long size = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor using {@link BufferPool#getDefault()}.
+     */
+    public PooledByteArrayOutputStream() { this(BufferPool.getDefault()); }
+
+    /**
+     * Constructor.
+     *
+     * @param   pool            The {@link BufferPool}.
+     */
+    public PooledByteArrayOutputStream(BufferPool pool) {
+        super();
+
+        this.pool = requireNonNull(pool, "pool");
+    }
+
+    /**
+     * @return  The number of bytes written.
+     */
+    public long size() { return size; }
+
+    private void ensure() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (current == null || position == current.length) {
+            int length = (current == null) ? 0 : current.length;
+
+            current = pool.acquire(Math.min(Math.max(length << 2, 1), pool.getMaximumSize()));
+            chunks.add(current);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void write(int octet) throws IOException {
+        ensure();
+        current[position++] = (byte) octet;
+        size += 1;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure();
+
+            int count = Math.min(length, current.length - position);
+
+            System.arraycopy(bytes, offset, current, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+            size += count;
+        }
+    }
+
+    /**
+     * Method to read an {@link InputStream} to exhaustion directly into
+     * the pooled buffers.
+     *
+     * @param   in              The {@link InputStream}.
+     *
+     * @return  {@link.this}
+     *
+     * @throws  IOException     If the {@link InputStream} cannot be read.
+     */
+    public PooledByteArrayOutputStream readFrom(InputStream in) throws IOException {
+        for (;;) {
+            ensure();
+
+            int count = in.read(current, position, current.length - position);
+
+            if (count < 0) {
+                break;
+            }
+
+            position += count;
+            size += count;
+        }
+
+        return this;
+    }
+
+    /**
+     * Method to write the accumulated bytes to another
+     * {@link OutputStream}.
+     *
+     * @param   out             The target {@link OutputStream}.
+     *
+     * @throws  IOException     If the bytes cannot be written.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 0, (chunk == current) ? position : chunk.length);
+        }
+    }
+
+    /**
+     * @return  A new {@code byte[]} (of exactly {@link #size()} bytes)
+     *          containing the accumulated bytes.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[Math.toIntExact(size)];
+        int offset = 0;
+
+        for (byte[] chunk : chunks) {
+            int count = (chunk == current) ? position : chunk.length;
+
+            System.arraycopy(chunk, 0, bytes, offset, count);
+            offset += count;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Method to decode the accumulated bytes.
+     *
+     * @param   charset         The {@link Charset}.
+     *
+     * @return  The decoded {@link String}.
+     */
+    public String toString(Charset charset) {
+        String string = null;
+
+        if (chunks.size() == 1) {
+            string = new String(current, 0, position, charset);
+        } else {
+            string = new String(toByteArray(), charset);
+        }
+
+        return string;
+    }
+
+    /**
+     * Method to transfer ownership of the pooled buffers to an
+     * {@link InputStream}.  The buffers are returned to the pool when the
+     * {@link InputStream} is closed.  No further writes are permitted.
+     *
+     * @return  The {@link InputStream}.
+     */
+    public InputStream toInputStream() {
+        Input in = new Input(new ArrayList<>(chunks), position);
+
+        chunks.clear();
+        current = null;
+        closed = true;
+
+        return in;
+    }
+
+    @Override
+    public void close() {
+        if (! closed) {
+            closed = true;
+            chunks.forEach(pool::release);
+            chunks.clear();
+            current = null;
+        }
+    }
+
+    private class Input extends InputStream {
+        private final List<byte[]> chunks;
+        private final int last;
+        private int index = 0;
+        private int offset = 0;
+
+        public Input(List<byte[]> chunks, int last) {
+            super();
+
+            this.chunks = chunks;
+            this.last = last;
+        }
+
+        private int limit() {
+            return (index == chunks.size() - 1) ? last : chunks.get(index).length;
+        }
+
+        private boolean advance() {
+            while (index < chunks.size() && offset >= limit()) {
+                index += 1;
+                offset = 0;
+            }
+
+            return index < chunks.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return advance() ? (chunks.get(index)[offset++] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int length) throws IOException {
+            int count = -1;
+
+            if (length == 0) {
+                count = 0;
+            } else if (advance()) {
+                count = Math.min(length, limit() - offset);
+                System.arraycopy(chunks.get(index), offset, bytes, off, count);
+                offset += count;
+            }
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return advance() ? (limit() - offset) : 0;
+        }
+
+        @Override
+        public void close() {
+            chunks.forEach(pool::release);
+            chunks.clear();
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import lombok.ToString;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpMessage;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpRequestInterceptor;
+import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+/**
+ * A protocol method call through a {@link ProtocolClient#proxy()}.  The
+ * call records the time spent in each {@link Phase} and notifies the
+ * {@link ProtocolClient}'s {@link ProtocolCallListener}s.  The call in
+ * progress on the current {@link Thread} is available through
+ * {@link #current()}; every call in progress is available through
+ * {@link ProtocolClient#getInFlightCalls()}.
+ * <p>
+ * Phase timestamps come from the {@link ProtocolInvocationHandler}, from
+ * request and response interceptors, and from connection manager
+ * callbacks.  {@link Phase#LEASE} and {@link Phase#CONNECT} are only
+ * observed if the {@link ProtocolClient#manager()} is known.
+ * </p>
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "method", "template", "phase", "status" })
+public class ProtocolCall {
+    private static final ThreadLocal<ProtocolCall> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Protocol call phases.
+     */
+    public enum Phase {
+        /**
+         * {@link ProtocolRequestBuilder} builds the request.
+         */
+        BUILD,
+        /**
+         * Waiting to lease a pooled connection.
+         */
+        LEASE,
+        /**
+         * Opening a connection (DNS, TCP, and TLS).
+         */
+        CONNECT,
+        /**
+         * Sending the request and waiting for the response headers.
+         */
+        TTFB,
+        /**
+         * Reading the response body and de-serializing it.
+         */
+        DECODE;
+    }
+
+    private final ProtocolClient<?> client;
+    private final Method method;
+    private final Thread thread;
+    private final long startTime;
+    private final long start;
+    private final ProtocolCall previous;
+    private final long[] durations = new long[Phase.values().length];
+    private volatile Phase phase = null;
+    private long phaseStart = 0;
+    private volatile long end = 0;
+    private volatile String template = null;
+    private volatile HttpMessage request = null;
+    private volatile int status = 0;
+    private volatile long requestBytes = 0;
+    private volatile long responseBytes = 0;
+    private volatile Throwable failure = null;
+    private HashMap<String,Object> attributes = null;
+
+    private ProtocolCall(ProtocolClient<?> client, Method method) {
+        this.client = client;
+        this.method = method;
+        this.thread = Thread.currentThread();
+        this.startTime = System.currentTimeMillis();
+        this.start = System.nanoTime();
+        this.previous = CURRENT.get();
+    }
+
+    /**
+     * Static method to get the {@link ProtocolCall} in progress on the
+     * current {@link Thread}.
+     *
+     * @return  The {@link ProtocolCall} (may be {@code null}).
+     */
+    public static ProtocolCall current() { return CURRENT.get(); }
+
+    /**
+     * @return  The {@link ProtocolClient}.
+     */
+    public ProtocolClient<?> getClient() { return client; }
+
+    /**
+     * @return  The protocol {@link Method}.
+     */
+    public Method getMethod() { return method; }
+
+    /**
+     * @return  The calling {@link Thread}.
+     */
+    public Thread getThread() { return thread; }
+
+    /**
+     * @return  The call start time (milliseconds since the epoch).
+     */
+    public long getStartTime() { return startTime; }
+
+    /**
+     * @return  The elapsed time (in nanoseconds) so far or, if the call
+     *          has ended, the call duration.
+     */
+    public long getElapsed() {
+        long end = this.end;
+
+        return ((end != 0) ? end : System.nanoTime()) - start;
+    }
+
+    /**
+     * @return  {@code true} if the call has ended; {@code false}
+     *          otherwise.
+     */
+    public boolean isDone() { return end != 0; }
+
+    /**
+     * @return  The current {@link Phase} ({@code null} once the call has
+     *          ended).
+     */
+    public Phase getPhase() { return phase; }
+
+    /**
+     * Method to get the total time spent in a {@link Phase}.  Does not
+     * include time spent so far in the current phase.
+     *
+     * @param   phase           The {@link Phase}.
+     *
+     * @return  The time spent (in nanoseconds).
+     */
+    public long getDuration(Phase phase) { return durations[phase.ordinal()]; }
+
+    /**
+     * @return  The URI template (once the request is built).
+     */
+    public String getTemplate() { return template; }
+
+    /**
+     * @return  The request {@link HttpMessage} (once built).
+     */
+    public HttpMessage getRequest() { return request; }
+
+    /**
+     * @return  The request {@link URI} (may be {@code null}).
+     */
+    public URI getURI() {
+        URI uri = null;
+
+        if (request instanceof HttpRequest) {
+            try {
+                uri = ((HttpRequest) request).getUri();
+            } catch (Exception exception) {
+            }
+        }
+
+        return uri;
+    }
+
+    /**
+     * @return  The (last) response status code ({@code 0} if no response
+     *          has been received).
+     */
+    public int getStatus() { return status; }
+
+    /**
+     * @return  The request entity length ({@code -1} if unknown).
+     */
+    public long getRequestBytes() { return requestBytes; }
+
+    /**
+     * @return  The number of response entity bytes read.
+     */
+    public long getResponseBytes() { return responseBytes; }
+
+    /**
+     * @return  The {@link Throwable} the call failed with (if any).
+     */
+    public Throwable getFailure() { return failure; }
+
+    /**
+     * Method to get a listener attribute.  Attributes are not
+     * synchronized and should only be accessed from the calling
+     * {@link Thread} (i.e., from {@link ProtocolCallListener} callbacks).
+     *
+     * @param   name            The attribute name.
+     *
+     * @return  The attribute value (may be {@code null}).
+     */
+    public Object getAttribute(String name) {
+        return (attributes != null) ? attributes.get(name) : null;
+    }
+
+    /**
+     * Method to set (or remove) a listener attribute.  See
+     * {@link #getAttribute(String)}.
+     *
+     * @param   name            The attribute name.
+     * @param   value           The attribute value ({@code null} to
+     *                          remove).
+     */
+    public void setAttribute(String name, Object value) {
+        if (value != null) {
+            if (attributes == null) {
+                attributes = new HashMap<>();
+            }
+
+            attributes.put(name, value);
+        } else if (attributes != null) {
+            attributes.remove(name);
+        }
+    }
+
+    /**
+     * Static method to start a {@link ProtocolCall} on the current
+     * {@link Thread} (in {@link Phase#BUILD}).
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   method          The protocol {@link Method}.
+     *
+     * @return  The new {@link ProtocolCall}.
+     */
+    static ProtocolCall begin(ProtocolClient<?> client, Method method) {
+        ProtocolCall call = new ProtocolCall(client, method);
+
+        CURRENT.set(call);
+        client.inFlight().add(call);
+
+        for (ProtocolCallListener listener : call.listeners()) {
+            try {
+                listener.callStarted(call);
+            } catch (RuntimeException exception) {
+            }
+        }
+
+        call.enter(Phase.BUILD);
+
+        return call;
+    }
+
+    /**
+     * Method to record the built request.
+     *
+     * @param   request         The request {@link HttpMessage}.
+     * @param   template        The URI template.
+     */
+    void built(HttpMessage request, String template) {
+        this.request = request;
+        this.template = template;
+    }
+
+    /**
+     * Method to enter a {@link Phase} (leaving the current phase).
+     *
+     * @param   next            The next {@link Phase}.
+     */
+    void enter(Phase next) {
+        if (end == 0 && phase != next) {
+            long now = System.nanoTime();
+
+            leave(now);
+
+            phase = next;
+            phaseStart = now;
+
+            for (ProtocolCallListener listener : listeners()) {
+                try {
+                    listener.phaseStarted(this, next);
+                } catch (RuntimeException exception) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to end {@link.this} call and restore the previous
+     * {@link #current()} call.
+     *
+     * @param   failure         The {@link Throwable} the call failed with
+     *                          ({@code null} if successful).
+     */
+    void end(Throwable failure) {
+        if (end == 0) {
+            long now = System.nanoTime();
+
+            leave(now);
+
+            this.failure = failure;
+            this.phase = null;
+            this.end = now;
+
+            client.inFlight().remove(this);
+
+            if (CURRENT.get() == this) {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+
+            for (ProtocolCallListener listener : listeners()) {
+                try {
+                    listener.callEnded(this);
+                } catch (RuntimeException exception) {
+                }
+            }
+        }
+    }
+
+    private void leave(long now) {
+        Phase phase = this.phase;
+
+        if (phase != null) {
+            long nanos = now - phaseStart;
+
+            durations[phase.ordinal()] += nanos;
+
+            for (ProtocolCallListener listener : listeners()) {
+                try {
+                    listener.phaseEnded(this, phase, nanos);
+                } catch (RuntimeException exception) {
+                }
+            }
+        }
+    }
+
+    private List<ProtocolCallListener> listeners() { return client.listeners(); }
+
+    /**
+     * {@link HttpRequestInterceptor} that records the request entity
+     * length and enters {@link Phase#TTFB}.
+     */
+    static final HttpRequestInterceptor REQUEST_INTERCEPTOR =
+        (request, details, context) -> {
+            ProtocolCall call = current();
+
+            if (call != null) {
+                call.requestBytes = (details != null) ? details.getContentLength() : 0;
+                call.enter(Phase.TTFB);
+            }
+        };
+
+    /**
+     * {@link HttpResponseInterceptor} that records the response status,
+     * counts the response entity bytes, and enters {@link Phase#DECODE}.
+     */
+    static final HttpResponseInterceptor RESPONSE_INTERCEPTOR =
+        (response, details, context) -> {
+            ProtocolCall call = current();
+
+            if (call != null) {
+                call.status = response.getCode();
+
+                if (response instanceof ClassicHttpResponse) {
+                    HttpEntity entity = ((ClassicHttpResponse) response).getEntity();
+
+                    if (entity != null) {
+                        ((ClassicHttpResponse) response).setEntity(new CountingEntity(entity, call));
+                    }
+                }
+
+                call.enter(Phase.DECODE);
+            }
+        };
+
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final ProtocolCall call;
+
+        public CountingEntity(HttpEntity entity, ProtocolCall call) {
+            super(entity);
+
+            this.call = call;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream in = super.getContent();
+
+            return (in != null) ? new CountingInputStream(in) : null;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            byte[] buffer = BufferPool.getDefault().acquire(8 << 10);
+
+            try (InputStream in = getContent()) {
+                if (in != null) {
+                    for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                        out.write(buffer, 0, count);
+                    }
+                }
+            } finally {
+                BufferPool.getDefault().release(buffer);
+            }
+        }
+
+        private class CountingInputStream extends FilterInputStream {
+            public CountingInputStream(InputStream in) { super(in); }
+
+            @Override
+            public int read() throws IOException {
+                int octet = super.read();
+
+                if (octet >= 0) {
+                    call.responseBytes += 1;
+                }
+
+                return octet;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = super.read(bytes, offset, length);
+
+                if (count > 0) {
+                    call.responseBytes += count;
+                }
+
+                return count;
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                long skipped = super.skip(count);
+
+                call.responseBytes += skipped;
+
+                return skipped;
+            }
+        }
+    }
+}
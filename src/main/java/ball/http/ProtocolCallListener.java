@@ -0,0 +1,67 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.EventListener;
+
+/**
+ * {@link ProtocolClient} call event listener (see
+ * {@link ProtocolClient#addProtocolCallListener(ProtocolCallListener)}).
+ * Methods are invoked synchronously on the calling {@link Thread} and
+ * should return quickly; {@link RuntimeException}s thrown by listeners
+ * are ignored.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+public interface ProtocolCallListener extends EventListener {
+
+    /**
+     * Callback when a protocol call starts (before the request is built).
+     *
+     * @param   call            The {@link ProtocolCall}.
+     */
+    default void callStarted(ProtocolCall call) { }
+
+    /**
+     * Callback when a call enters a {@link ProtocolCall.Phase}.  A phase
+     * may be entered more than once (e.g., on redirects or retries).
+     *
+     * @param   call            The {@link ProtocolCall}.
+     * @param   phase           The {@link ProtocolCall.Phase}.
+     */
+    default void phaseStarted(ProtocolCall call, ProtocolCall.Phase phase) { }
+
+    /**
+     * Callback when a call leaves a {@link ProtocolCall.Phase}.
+     *
+     * @param   call            The {@link ProtocolCall}.
+     * @param   phase           The {@link ProtocolCall.Phase}.
+     * @param   nanos           The time spent in the phase (in
+     *                          nanoseconds).
+     */
+    default void phaseEnded(ProtocolCall call, ProtocolCall.Phase phase, long nanos) { }
+
+    /**
+     * Callback when a protocol call completes (successfully or not; see
+     * {@link ProtocolCall#getFailure()}).
+     *
+     * @param   call            The {@link ProtocolCall}.
+     */
+    default void callEnded(ProtocolCall call) { }
+}
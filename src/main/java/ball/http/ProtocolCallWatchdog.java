@@ -0,0 +1,136 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import lombok.ToString;
+import lombok.extern.java.Log;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Watchdog that periodically inspects a {@link ProtocolClient}'s
+ * in-flight calls (see {@link ProtocolClient#getInFlightCalls()}) and
+ * reports each call that has been in progress longer than a threshold
+ * (once per call).  The default report logs the protocol method, URI,
+ * phase, elapsed time, and the calling {@link Thread}'s stack.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@Log
+@ToString(of = { "client", "threshold" })
+public class ProtocolCallWatchdog implements AutoCloseable {
+    private final ProtocolClient<?> client;
+    private final Duration threshold;
+    private final Consumer<ProtocolCall> callback;
+    private final Set<ProtocolCall> reported = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor that logs stalled calls.
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   threshold       The {@link Duration} after which a call
+     *                          is reported.
+     */
+    public ProtocolCallWatchdog(ProtocolClient<?> client, Duration threshold) {
+        this(client, threshold, ProtocolCallWatchdog::log);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   threshold       The {@link Duration} after which a call
+     *                          is reported.
+     * @param   callback        The {@link Consumer} to report stalled
+     *                          calls to.
+     */
+    public ProtocolCallWatchdog(ProtocolClient<?> client, Duration threshold, Consumer<ProtocolCall> callback) {
+        this.client = requireNonNull(client, "client");
+        this.threshold = requireNonNull(threshold, "threshold");
+        this.callback = requireNonNull(callback, "callback");
+
+        if (threshold.isNegative() || threshold.isZero()) {
+            throw new IllegalArgumentException("threshold=" + threshold);
+        }
+
+        long period = Math.max(threshold.toMillis() / 4, 10);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ProtocolExecutors.threadFactory());
+        this.scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return  The threshold {@link Duration}.
+     */
+    public Duration getThreshold() { return threshold; }
+
+    /**
+     * Method to check the in-flight calls immediately.
+     */
+    public void check() {
+        long nanos = threshold.toNanos();
+
+        reported.removeIf(ProtocolCall::isDone);
+
+        for (ProtocolCall call : client.getInFlightCalls()) {
+            if (call.getElapsed() >= nanos && reported.add(call)) {
+                try {
+                    callback.accept(call);
+                } catch (RuntimeException exception) {
+                    log.log(Level.WARNING, "Watchdog callback failed", exception);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() { scheduler.shutdownNow(); }
+
+    private static void log(ProtocolCall call) {
+        Thread thread = call.getThread();
+        Throwable stack = new Throwable("Stack of " + thread);
+
+        stack.setStackTrace(thread.getStackTrace());
+
+        LogRecord record =
+            new LogRecord(Level.WARNING,
+                          "Stalled protocol call: {0}.{1} {2} phase={3} elapsed={4} ms");
+
+        record.setLoggerName(log.getName());
+        record.setParameters(new Object[] {
+                                 call.getMethod().getDeclaringClass().getName(),
+                                 call.getMethod().getName(),
+                                 call.getURI(), call.getPhase(),
+                                 TimeUnit.NANOSECONDS.toMillis(call.getElapsed())
+                             });
+        record.setThrown(stack);
+
+        log.log(record);
+    }
+}
@@ -18,23 +18,65 @@ package ball.http;
  * limitations under the License.
  * ##########################################################################
  */
+import ball.http.annotation.Priority;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.stream.Stream;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import lombok.ToString;
+import lombok.extern.java.Log;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.utils.URIUtils;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.HttpRequest;
 import org.apache.hc.core5.http.HttpRequestInterceptor;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
@@ -74,11 +116,38 @@ import static java.util.Objects.requireNonNull;
  * {@link ProtocolInvocationHandler} for a description of how
  * {@link HttpRequest}s are generated and executed.
  * </p>
+ * <p>
+ * Many {@link ProtocolClient}s (e.g., one per tenant credential) may
+ * be created as views of one {@link ProtocolTransport} to share a
+ * connection pool and codec caches (see
+ * {@link #ProtocolClient(ProtocolTransport,HttpCoreContext,Class)}).
+ * </p>
+ * <p>
+ * {@link #warmUp(int,URI...)} and {@link #warmUpAsync(int,URI...)}
+ * pre-build the per-method state otherwise built lazily on the first
+ * call and pre-open connections so the first requests do not pay for
+ * codec construction, DNS, or TCP/TLS handshakes.
+ * </p>
+ * <p>
+ * Every {@link #proxy()} call is tracked as a {@link ProtocolCall};
+ * {@link ProtocolCallListener}s registered with
+ * {@link #addProtocolCallListener(ProtocolCallListener)} observe the time
+ * spent in each {@link ProtocolCall.Phase} (see
+ * {@link PhaseHistogramListener}).  On Java 11 and later, calls are
+ * also recorded as Java Flight Recorder events.
+ * </p>
  * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
  */
-@ToString
+@Log @ToString
 public abstract class ProtocolClient<P> implements HttpRequestInterceptor, HttpResponseInterceptor {
+    private static final Timeout WARM_UP_TIMEOUT = Timeout.ofSeconds(30);
+    private static final TimeValue WARM_UP_KEEP_ALIVE = TimeValue.ofMinutes(3);
+    private static final Timeout PIPELINE_TIMEOUT = Timeout.ofSeconds(60);
+
+    private final ProtocolTransport transport;
     private final CloseableHttpClient client;
+    private final HttpClientConnectionManager manager;
+    private final InstrumentedConnectionManager instrumented;
     private final HttpCoreContext context;
     private final Class<? extends P> protocol;
     private final Object proxy;
@@ -87,30 +156,49 @@ public abstract class ProtocolClient<P> implements HttpRequestInterceptor, HttpR
      * Field exposed for subclass initialization;
      * see {@link #getJAXBContext()}.
      */
-    protected transient JAXBContext jaxb = null;
+    protected transient volatile JAXBContext jaxb = null;
 
     /**
      * Field exposed for subclass initialization;
      * see {@link #getObjectMapper()}.
      */
-    protected transient ObjectMapper mapper = null;
+    protected transient volatile ObjectMapper mapper = null;
 
-    private transient Marshaller marshaller = null;
-    private transient Unmarshaller unmarshaller = null;
+    private final transient CopyOnWriteArrayList<ProtocolCallListener> listeners = new CopyOnWriteArrayList<>();
+    private final transient Set<ProtocolCall> inFlight = ConcurrentHashMap.newKeySet();
+    private final transient AtomicBoolean ungated = new AtomicBoolean(false);
+    private final transient ConcurrentHashMap<JacksonDataFormat,ObjectMapper> mappers = new ConcurrentHashMap<>();
+    private transient volatile Marshaller marshaller = null;
+    private transient volatile Unmarshaller unmarshaller = null;
+    /*
+     * A Lock (rather than synchronized) so lazy initialization does not
+     * pin a virtual thread's carrier.
+     */
+    private final transient Lock lock = new ReentrantLock();
 
     /**
-     * Constructor that creates {@link HttpClientBuilder}
-     * and {@link HttpCoreContext}.
+     * Constructor that creates {@link HttpClientBuilder},
+     * {@link HttpClientConnectionManager}, and {@link HttpCoreContext}.
      *
      * @param   protocol        The protocol {@link Class}.
      */
     protected ProtocolClient(Class<? extends P> protocol) {
-        this(HttpClientBuilder.create(), null, protocol);
+        this(HttpClientBuilder.create(), PoolingHttpClientConnectionManagerBuilder.create().build(), null, protocol);
     }
 
     /**
      * Constructor that allows the subclass to provide a configured
-     * {@link HttpClientBuilder} and/or {@link HttpCoreContext}.
+     * {@link HttpClientBuilder} and/or {@link HttpCoreContext}.  The
+     * {@link HttpClientConnectionManager} configured into the
+     * {@link HttpClientBuilder} is not known to {@link.this}
+     * {@link ProtocolClient}:  {@link ball.http.annotation.Priority} and
+     * {@link LeasePriority} are ignored (with a warning),
+     * {@link #reserveConnections(int,int)} is not supported, no
+     * {@link ProtocolCall.Phase#LEASE} or {@link ProtocolCall.Phase#CONNECT}
+     * times are observed, and {@link #warmUp(int,URI...)} does not
+     * pre-open connections.  Use
+     * {@link #ProtocolClient(HttpClientBuilder,HttpClientConnectionManager,HttpCoreContext,Class)}
+     * to provide the {@link HttpClientConnectionManager}.
      *
      * @param   builder         A configured {@link HttpClientBuilder}.
      * @param   context         A {@link HttpCoreContext} (may be
@@ -118,23 +206,106 @@ public abstract class ProtocolClient<P> implements HttpRequestInterceptor, HttpR
      * @param   protocol        The protocol {@link Class}.
      */
     protected ProtocolClient(HttpClientBuilder builder, HttpCoreContext context, Class<? extends P> protocol) {
+        this(builder, null, context, protocol);
+    }
+
+    /**
+     * Constructor that allows the subclass to provide a configured
+     * {@link HttpClientBuilder}, {@link HttpClientConnectionManager},
+     * and/or {@link HttpCoreContext}.
+     *
+     * @param   builder         A configured {@link HttpClientBuilder}.
+     * @param   manager         The {@link HttpClientConnectionManager}
+     *                          to configure into the
+     *                          {@link HttpClientBuilder} (may be
+     *                          {@code null}).
+     * @param   context         A {@link HttpCoreContext} (may be
+     *                          {@code null}).
+     * @param   protocol        The protocol {@link Class}.
+     */
+    protected ProtocolClient(HttpClientBuilder builder, HttpClientConnectionManager manager,
+                             HttpCoreContext context, Class<? extends P> protocol) {
+        InstrumentedConnectionManager instrumented = null;
+
+        if (manager != null) {
+            instrumented = new InstrumentedConnectionManager(manager);
+            builder.setConnectionManager(instrumented);
+        }
+
+        this.transport = null;
         this.client =
             builder
+            .addExecInterceptorFirst(ProtocolInvocationHandler.class.getName(),
+                                     ProtocolInvocationHandler.EXEC_INTERCEPTOR)
             .addRequestInterceptorLast(this)
+            .addRequestInterceptorLast(ProtocolCall.REQUEST_INTERCEPTOR)
+            .addResponseInterceptorFirst(ProtocolCall.RESPONSE_INTERCEPTOR)
             .addResponseInterceptorLast(this)
             .build();
+        this.manager = manager;
+        this.instrumented = instrumented;
+
+        if (FlightRecorderListener.getInstance() != null) {
+            listeners.add(FlightRecorderListener.getInstance());
+        }
+
+        this.context = (context != null) ? context : HttpCoreContext.create();
+        this.protocol = requireNonNull(protocol, "protocol");
+        this.proxy =
+            Proxy.newProxyInstance(protocol.getClassLoader(),
+                                   new Class<?>[] { protocol }, new ProtocolInvocationHandler(this));
+    }
+
+    /**
+     * Constructor for a lightweight view of a shared
+     * {@link ProtocolTransport}.  The view shares the transport's
+     * {@link CloseableHttpClient}, connection pool, and
+     * {@link ObjectMapper}s but has its own {@link HttpCoreContext}
+     * (which may carry per-view credentials), interceptor methods, and
+     * {@link ProtocolCallListener}s.
+     *
+     * @param   transport       The shared {@link ProtocolTransport}.
+     * @param   context         A {@link HttpCoreContext} (may be
+     *                          {@code null}).
+     * @param   protocol        The protocol {@link Class}.
+     */
+    protected ProtocolClient(ProtocolTransport transport, HttpCoreContext context, Class<? extends P> protocol) {
+        this.transport = requireNonNull(transport, "transport");
+        this.client = transport.client();
+        this.manager = transport.manager();
+        this.instrumented = transport.instrumented();
+
+        if (FlightRecorderListener.getInstance() != null) {
+            listeners.add(FlightRecorderListener.getInstance());
+        }
+
         this.context = (context != null) ? context : HttpCoreContext.create();
+        this.context.setAttribute(ProtocolTransport.CLIENT, this);
         this.protocol = requireNonNull(protocol, "protocol");
         this.proxy =
             Proxy.newProxyInstance(protocol.getClassLoader(),
                                    new Class<?>[] { protocol }, new ProtocolInvocationHandler(this));
     }
 
+    /**
+     * @return  The shared {@link ProtocolTransport} ({@code null} if
+     *          {@link.this} {@link ProtocolClient} owns its
+     *          {@link #client()})
+     */
+    public ProtocolTransport transport() { return transport; }
+
     /**
      * @return  {@link ProtocolClient} {@link CloseableHttpClient}
      */
     public CloseableHttpClient client() { return client; }
 
+    /**
+     * @return  {@link ProtocolClient} {@link HttpClientConnectionManager}
+     *          ({@code null} if not known to {@link.this}
+     *          {@link ProtocolClient})
+     */
+    public HttpClientConnectionManager manager() { return manager; }
+
     /**
      * @return  {@link ProtocolClient} {@link HttpCoreContext}
      */
@@ -187,19 +358,67 @@ import java.lang.reflect.Method;
     }
 */
     /**
+     * Method to add a {@link ProtocolCallListener}.
+     *
+     * @param   listener        The {@link ProtocolCallListener}.
+     */
+    public void addProtocolCallListener(ProtocolCallListener listener) {
+        listeners.add(requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * Method to remove a {@link ProtocolCallListener}.
+     *
+     * @param   listener        The {@link ProtocolCallListener}.
+     */
+    public void removeProtocolCallListener(ProtocolCallListener listener) {
+        listeners.remove(listener);
+    }
+
+    List<ProtocolCallListener> listeners() { return listeners; }
+
+    /**
+     * Method to get a snapshot of the {@link #proxy()} calls in progress
+     * (see {@link ProtocolCallWatchdog}).
+     *
+     * @return  The in-flight {@link ProtocolCall}s (oldest first).
+     */
+    public List<ProtocolCall> getInFlightCalls() {
+        List<ProtocolCall> list = new ArrayList<>(inFlight);
+
+        list.sort(Comparator.comparingLong(ProtocolCall::getStartTime));
+
+        return list;
+    }
+
+    Set<ProtocolCall> inFlight() { return inFlight; }
+
+    /*
+     * Priorities are enforced by the LeaseGate of a known pool.  Warn
+     * (once) rather than silently ignore a priority without one.
+     */
+    void checkLeasePriority(Method method) {
+        LeaseGate gate = (instrumented != null) ? instrumented.gate() : null;
+
+        if (gate == null && (! ungated.get())) {
+            if (LeasePriority.current() != Priority.NORMAL) {
+                if (ungated.compareAndSet(false, true)) {
+                    log.log(Level.WARNING,
+                            "{0}: Priority of {1} ignored; connection pool is not known",
+                            new Object[] { getClass().getName(), method });
+                }
+            }
+        }
+    }
+
+    /**
+     * See {@link JAXBContexts#get(Class)}.
+     *
      * @return  {@link #protocol()} configured {@link JAXBContext}
      */
     public JAXBContext getJAXBContext() {
         if (jaxb == null) {
-            synchronized(this) {
-                if (jaxb == null) {
-                    try {
-                        jaxb = JAXBContext.newInstance(new Class<?>[] { protocol() });
-                    } catch (JAXBException exception) {
-                        throw new IllegalStateException(exception);
-                    }
-                }
-            }
+            jaxb = JAXBContexts.get(protocol());
         }
 
         return jaxb;
@@ -210,34 +429,65 @@ import java.lang.reflect.Method;
      */
     public Marshaller getMarshaller() {
         if (marshaller == null) {
-            synchronized(this) {
+            lock.lock();
+
+            try {
                 if (marshaller == null) {
-                    try {
-                        marshaller = getJAXBContext().createMarshaller();
-                        marshaller.setProperty(Marshaller.JAXB_ENCODING, UTF_8);
-                    } catch (JAXBException exception) {
-                        throw new IllegalStateException(exception);
-                    }
+                    marshaller = createMarshaller();
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
         return marshaller;
     }
 
+    /**
+     * Method to create a new {@link #protocol()} configured
+     * {@link Marshaller} (UTF-8 encoding) from the cached
+     * {@link #getJAXBContext()}.  See {@link #createMarshaller(Charset)}.
+     *
+     * @return  A new {@link Marshaller}.
+     */
+    public Marshaller createMarshaller() { return createMarshaller(UTF_8); }
+
+    /**
+     * Method to create a new {@link #protocol()} configured
+     * {@link Marshaller} from the cached {@link #getJAXBContext()}.
+     * {@link Marshaller}s are not thread-safe: request entities marshal
+     * through a {@link Marshaller} of their own rather than the shared
+     * {@link #getMarshaller()}.
+     *
+     * @param   charset         The output encoding {@link Charset}.
+     *
+     * @return  A new {@link Marshaller}.
+     */
+    public Marshaller createMarshaller(Charset charset) {
+        try {
+            Marshaller marshaller = getJAXBContext().createMarshaller();
+
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, charset.name());
+
+            return marshaller;
+        } catch (JAXBException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
     /**
      * @return  {@link #protocol()} configured {@link Unmarshaller}
      */
     public Unmarshaller getUnmarshaller() {
         if (unmarshaller == null) {
-            synchronized(this) {
+            lock.lock();
+
+            try {
                 if (unmarshaller == null) {
-                    try {
-                        unmarshaller = getJAXBContext().createUnmarshaller();
-                    } catch (JAXBException exception) {
-                        throw new IllegalStateException(exception);
-                    }
+                    unmarshaller = createUnmarshaller();
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -245,20 +495,535 @@ import java.lang.reflect.Method;
     }
 
     /**
+     * Method to create a new {@link #protocol()} configured
+     * {@link Unmarshaller} from the cached {@link #getJAXBContext()}.
+     * {@link Unmarshaller}s are not thread-safe: response entities
+     * unmarshal through an {@link Unmarshaller} of their own rather than
+     * the shared {@link #getUnmarshaller()}.
+     *
+     * @return  A new {@link Unmarshaller}.
+     */
+    public Unmarshaller createUnmarshaller() {
+        try {
+            return getJAXBContext().createUnmarshaller();
+        } catch (JAXBException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Views of a {@link ProtocolTransport} share the transport's
+     * {@link ObjectMapper} unless the subclass initializes
+     * {@link #mapper}.
+     *
      * @return  {@link #protocol()} configured {@link ObjectMapper}.
      */
     public ObjectMapper getObjectMapper() {
         if (mapper == null) {
-            synchronized(this) {
+            lock.lock();
+
+            try {
                 if (mapper == null) {
-                    mapper = new ObjectMapper();
+                    mapper = (transport != null) ? transport.getObjectMapper() : new ObjectMapper();
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
         return mapper;
     }
 
+    /**
+     * Method to get the {@link ObjectMapper} for a
+     * {@link JacksonDataFormat}.  Binary format {@link ObjectMapper}s are
+     * copies of {@link #getObjectMapper()} configured with the format's
+     * {@link com.fasterxml.jackson.core.JsonFactory}.
+     *
+     * @param   format          The {@link JacksonDataFormat}.
+     *
+     * @return  {@link #protocol()} configured {@link ObjectMapper}.
+     */
+    public ObjectMapper getObjectMapper(JacksonDataFormat format) {
+        ObjectMapper om = null;
+
+        switch (format) {
+        case JSON:
+            om = getObjectMapper();
+            break;
+
+        default:
+            if (transport != null && getObjectMapper() == transport.getObjectMapper()) {
+                om = transport.getObjectMapper(format);
+            } else {
+                om = mappers.computeIfAbsent(format, k -> getObjectMapper().copyWith(k.newJsonFactory()));
+            }
+            break;
+        }
+
+        return om;
+    }
+
+    /**
+     * Method to warm up {@link.this} {@link ProtocolClient}: pre-builds
+     * the {@link #getObjectMapper()}, the request plan,
+     * {@link UriTemplate}, and codecs of every {@link #protocol()}
+     * method (see {@link ProtocolInvocationHandler#warmUp(Method)}),
+     * resolves the host of every origin, and pre-opens up to
+     * {@code connections} connections per (direct) route.  The origins
+     * are the {@code targets} and those of every method template that
+     * specifies a scheme and a constant authority.  Connections are only
+     * pre-opened if the {@link #manager()} is known.
+     *
+     * @param   connections     The number of connections to open per
+     *                          route (limited by the pool's maximum per
+     *                          route).
+     * @param   targets         Additional target {@link URI}s.
+     *
+     * @throws  IOException     If a host cannot be resolved or a
+     *                          connection cannot be opened.
+     */
+    public void warmUp(int connections, URI... targets) throws IOException {
+        Set<HttpHost> hosts = new LinkedHashSet<>();
+
+        for (URI target : targets) {
+            hosts.add(host(target));
+        }
+
+        getObjectMapper();
+
+        for (Method method : protocol().getMethods()) {
+            if (! (method.isDefault() || Modifier.isStatic(method.getModifiers()))) {
+                try {
+                    URI origin = handler().warmUp(method).getOrigin();
+
+                    if (origin != null) {
+                        hosts.add(host(origin));
+                    }
+                } catch (IOException | RuntimeException exception) {
+                    throw exception;
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException(String.valueOf(method), throwable);
+                }
+            }
+        }
+
+        for (HttpHost host : hosts) {
+            InetAddress.getAllByName(host.getHostName());
+
+            if (manager != null && connections > 0) {
+                connect(new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName())), connections);
+            }
+        }
+    }
+
+    /**
+     * Method to {@link #warmUp(int,URI...)} on
+     * {@link ProtocolExecutors#executor()}.
+     *
+     * @param   connections     The number of connections to open per
+     *                          route.
+     * @param   targets         Additional target {@link URI}s.
+     *
+     * @return  The {@link CompletableFuture} that completes when the
+     *          warm-up is complete.
+     */
+    public CompletableFuture<Void> warmUpAsync(int connections, URI... targets) {
+        return CompletableFuture.runAsync(() -> {
+                try {
+                    warmUp(connections, targets);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }, ProtocolExecutors.executor());
+    }
+
+    /**
+     * Method to reserve {@code connections} of each route's connections
+     * for calls with {@link ball.http.annotation.Priority} (or
+     * {@link LeasePriority}) {@code priority} or higher so lower-priority
+     * (e.g., bulk) calls can never lease every connection.  Reservations
+     * for different priorities accumulate.  Views of a
+     * {@link ProtocolTransport} share the transport's reservations.
+     * Requires a pooling {@link #manager()} (a
+     * {@link ConnPoolControl}).
+     *
+     * @param   priority        The minimum priority.
+     * @param   connections     The number of connections to reserve
+     *                          ({@code 0} to remove the reservation).
+     *
+     * @throws  IllegalArgumentException
+     *                          If the total reserved would reach the
+     *                          pool's per-route (or total) capacity.
+     * @throws  IllegalStateException
+     *                          If the {@link #manager()} is not a known
+     *                          {@link ConnPoolControl}.
+     */
+    public void reserveConnections(int priority, int connections) {
+        LeaseGate gate = (instrumented != null) ? instrumented.gate() : null;
+
+        if (gate == null) {
+            throw new IllegalStateException("Connection pool is not known");
+        }
+
+        gate.reserve(priority, connections);
+    }
+
+    /**
+     * Method to get the default maximum number of concurrent
+     * {@link #fanOut(ProtocolFunction,Iterable)} calls: the
+     * {@link #manager()}'s default maximum connections per route (so
+     * calls do not queue for a connection) or, if the pool limits are
+     * not known, {@link Runtime#availableProcessors()}.
+     *
+     * @return  The default parallelism.
+     */
+    @SuppressWarnings({ "unchecked" })
+    public int getFanOutParallelism() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        if (manager instanceof ConnPoolControl<?>) {
+            parallelism = ((ConnPoolControl<HttpRoute>) manager).getDefaultMaxPerRoute();
+        }
+
+        return Math.max(1, parallelism);
+    }
+
+    /**
+     * Method to call {@code function} for every argument concurrently on
+     * {@link ProtocolExecutors#executor()} with at most
+     * {@link #getFanOutParallelism()} calls in flight.  For example:
+     * <pre>{@code
+     * List<Outcome<String,Item>> outcomes = client.fanOut(API::get, ids);
+     * }</pre>
+     *
+     * @param   <A>             The argument (tuple) type.
+     * @param   <R>             The result type.
+     * @param   function        The {@link ProtocolFunction}.
+     * @param   arguments       The arguments (tuples).
+     *
+     * @return  The {@link Outcome}s in argument order.
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting (calls in
+     *                          flight are cancelled).
+     */
+    public <A,R> List<Outcome<A,R>> fanOut(ProtocolFunction<? super P,? super A,? extends R> function,
+                                           Iterable<? extends A> arguments) throws InterruptedException {
+        return fanOut(function, arguments.iterator(), ProtocolExecutors.executor(), getFanOutParallelism());
+    }
+
+    /**
+     * {@link Stream} variant of {@link #fanOut(ProtocolFunction,Iterable)}.
+     * The {@link Stream} is consumed lazily (at most
+     * {@link #getFanOutParallelism()} arguments ahead of the completed
+     * calls).
+     *
+     * @param   <A>             The argument (tuple) type.
+     * @param   <R>             The result type.
+     * @param   function        The {@link ProtocolFunction}.
+     * @param   arguments       The arguments (tuples).
+     *
+     * @return  The {@link Outcome}s in argument order.
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting (calls in
+     *                          flight are cancelled).
+     */
+    public <A,R> List<Outcome<A,R>> fanOut(ProtocolFunction<? super P,? super A,? extends R> function,
+                                           Stream<? extends A> arguments) throws InterruptedException {
+        return fanOut(function, arguments.iterator(), ProtocolExecutors.executor(), getFanOutParallelism());
+    }
+
+    /**
+     * Method to call {@code function} for every argument concurrently and
+     * collect the {@link Outcome}s in argument order.  See
+     * {@link #fanOut(ProtocolFunction,Iterator,Executor,int,Consumer)}.
+     *
+     * @param   <A>             The argument (tuple) type.
+     * @param   <R>             The result type.
+     * @param   function        The {@link ProtocolFunction}.
+     * @param   arguments       The argument {@link Iterator}.
+     * @param   executor        The {@link Executor} to run the calls.
+     * @param   parallelism     The maximum number of calls in flight.
+     *
+     * @return  The {@link Outcome}s in argument order.
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting (calls in
+     *                          flight are cancelled).
+     */
+    public <A,R> List<Outcome<A,R>> fanOut(ProtocolFunction<? super P,? super A,? extends R> function,
+                                           Iterator<? extends A> arguments,
+                                           Executor executor, int parallelism) throws InterruptedException {
+        List<Outcome<A,R>> list = new ArrayList<>();
+
+        this.<A,R>fanOut(function, arguments, executor, parallelism, t -> {
+                while (list.size() <= t.getIndex()) {
+                    list.add(null);
+                }
+
+                list.set(t.getIndex(), t);
+            });
+
+        return list;
+    }
+
+    /**
+     * Method to call {@code function} for every argument concurrently
+     * and deliver each {@link Outcome} to {@code consumer} (on the
+     * calling {@link Thread}) as the call completes.  At most
+     * {@code parallelism} (limited by the {@link #manager()}'s maximum
+     * total connections if known) calls are in flight at once and the
+     * next argument is taken from {@code arguments} only as calls
+     * complete.  A failed call does not affect the others; its
+     * {@link Throwable} is captured in its {@link Outcome}.
+     *
+     * @param   <A>             The argument (tuple) type.
+     * @param   <R>             The result type.
+     * @param   function        The {@link ProtocolFunction}.
+     * @param   arguments       The argument {@link Iterator}.
+     * @param   executor        The {@link Executor} to run the calls.
+     * @param   parallelism     The maximum number of calls in flight.
+     * @param   consumer        The {@link Consumer} of {@link Outcome}s
+     *                          (in completion order).
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting (calls in
+     *                          flight are cancelled).
+     */
+    @SuppressWarnings({ "unchecked" })
+    public <A,R> void fanOut(ProtocolFunction<? super P,? super A,? extends R> function,
+                             Iterator<? extends A> arguments, Executor executor, int parallelism,
+                             Consumer<? super Outcome<A,R>> consumer) throws InterruptedException {
+        if (manager instanceof ConnPoolControl<?>) {
+            parallelism = Math.min(parallelism, ((ConnPoolControl<HttpRoute>) manager).getMaxTotal());
+        }
+
+        new FanOut<P,A,R>(proxy(), function, executor, parallelism).run(arguments, consumer);
+    }
+
+    /**
+     * Method to send {@code requests} with HTTP/1.1 pipelining: the
+     * requests are grouped by target host and each group is sent
+     * back-to-back (without waiting for each response) over at most
+     * {@code connections} connections.  Request and response entities
+     * are buffered and {@link.this} {@link ProtocolClient}'s interceptor
+     * methods are applied.  The requests are not tracked as
+     * {@link ProtocolCall}s and are sent on dedicated connections: the
+     * {@link #client()}'s pool and its builder's configuration (proxy,
+     * credentials, default headers, request interceptors, and
+     * {@link org.apache.hc.client5.http.config.RequestConfig}) do not
+     * apply.  TLS uses {@link #getPipelineTlsStrategy()} and connecting
+     * and waiting for every response are limited by
+     * {@link #getPipelineTimeout()} and the current {@link Deadline}.
+     * Only idempotent requests may be pipelined and only to servers that
+     * support pipelining.
+     *
+     * @param   connections     The maximum number of connections per
+     *                          host.
+     * @param   requests        The {@link ClassicHttpRequest}s (e.g., as
+     *                          returned by protocol methods that return
+     *                          a request).
+     *
+     * @return  The buffered {@link ClassicHttpResponse}s in the same
+     *          order as {@code requests}.
+     *
+     * @throws  IllegalArgumentException
+     *                          If any request is not idempotent.
+     * @throws  IOException     If any request fails or the timeout
+     *                          expires.
+     */
+    public List<ClassicHttpResponse> pipeline(int connections,
+                                              List<? extends ClassicHttpRequest> requests) throws IOException {
+        return new Pipeliner(this, connections, getPipelineTlsStrategy(), getPipelineTimeout()).send(requests);
+    }
+
+    /**
+     * Method to {@link #pipeline(int,List)} protocol method calls.  Each
+     * {@link Consumer} must invoke exactly one {@link #protocol()} method
+     * on its argument; the invocation is recorded (its return value is
+     * discarded) and the request it builds is pipelined.  For example:
+     * <pre>{@code
+     * List<Object> results =
+     *     client.pipelineCalls(2, ids.stream()
+     *                             .map(id -> (Consumer<API>) api -> api.get(id))
+     *                             .collect(toList()));
+     * }</pre>
+     *
+     * @param   connections     The maximum number of connections per
+     *                          host.
+     * @param   calls           The {@link Consumer}s.
+     *
+     * @return  The de-serialized results in the same order as
+     *          {@code calls} ({@code null} for {@code void} methods).
+     *
+     * @throws  IllegalArgumentException
+     *                          If any call's request is not idempotent.
+     * @throws  IOException     If any call fails or the timeout
+     *                          expires.
+     */
+    public List<Object> pipelineCalls(int connections,
+                                      List<? extends Consumer<? super P>> calls) throws IOException {
+        Pipeliner pipeliner = new Pipeliner(this, connections, getPipelineTlsStrategy(), getPipelineTimeout());
+        List<Object> results = new ArrayList<>(calls.size());
+
+        try {
+            List<Map.Entry<Method,ClassicHttpRequest>> recorded = pipeliner.record(protocol(), calls);
+            List<ClassicHttpRequest> requests = new ArrayList<>(recorded.size());
+
+            for (Map.Entry<Method,ClassicHttpRequest> entry : recorded) {
+                requests.add(entry.getValue());
+            }
+
+            List<ClassicHttpResponse> responses = pipeliner.send(requests);
+
+            for (int i = 0; i < responses.size(); i += 1) {
+                results.add(pipeliner.decode(recorded.get(i).getKey(), responses.get(i)));
+            }
+        } catch (IOException | RuntimeException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IOException(throwable);
+        }
+
+        return results;
+    }
+
+    /**
+     * Method to get the {@link TlsStrategy} for
+     * {@link #pipeline(int,List)} connections.  Subclasses that configure
+     * the {@link #client()} with a custom
+     * {@link javax.net.ssl.SSLContext} should override (e.g., to return
+     * a {@link org.apache.hc.core5.http.nio.ssl.BasicClientTlsStrategy}
+     * of the same {@link javax.net.ssl.SSLContext}).
+     *
+     * @return  The {@link TlsStrategy} (default {@code null} for the JVM
+     *          default {@link javax.net.ssl.SSLContext}).
+     */
+    protected TlsStrategy getPipelineTlsStrategy() { return null; }
+
+    /**
+     * Method to get the maximum time {@link #pipeline(int,List)} waits to
+     * connect and receive every response (and the connections' socket
+     * timeout).  Subclasses may override.
+     *
+     * @return  The {@link Timeout} (default 60 seconds).
+     */
+    protected Timeout getPipelineTimeout() { return PIPELINE_TIMEOUT; }
+
+    private HttpHost host(URI uri) throws IOException {
+        HttpHost host = URIUtils.extractHost(uri);
+
+        if (host == null) {
+            throw new IllegalArgumentException("No host: " + uri);
+        }
+
+        if (host.getPort() < 0) {
+            host = new HttpHost(host.getSchemeName(), host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host));
+        }
+
+        return host;
+    }
+
+    @SuppressWarnings({ "unchecked" })
+    private void connect(HttpRoute route, int connections) throws IOException {
+        int count = connections;
+
+        if (manager instanceof ConnPoolControl<?>) {
+            count = Math.min(count, ((ConnPoolControl<HttpRoute>) manager).getMaxPerRoute(route));
+        }
+
+        LeaseGate gate = instrumented.gate();
+
+        if (gate != null) {
+            count = Math.min(count, gate.capacity(route, LeasePriority.current()));
+        }
+        /*
+         * Hold every endpoint until all are connected so each lease opens
+         * a distinct connection.  Leases are admitted through the
+         * LeaseGate so warm-up honors reservations and priorities.  A
+         * connected endpoint is released by whichever of the task or
+         * the finally block removes it from the set so a task that
+         * completes after being cancelled does not leak its lease.
+         */
+        List<Future<ConnectionEndpoint>> futures = new ArrayList<>(count);
+        Set<ConnectionEndpoint> endpoints = ConcurrentHashMap.newKeySet();
+        AtomicBoolean done = new AtomicBoolean(false);
+
+        try {
+            for (int i = 0; i < count; i += 1) {
+                futures.add(ProtocolExecutors.executor().submit(() -> {
+                            ConnectionEndpoint endpoint =
+                                instrumented.lease(getClass().getName(), route, WARM_UP_TIMEOUT, null)
+                                .get(WARM_UP_TIMEOUT);
+
+                            try {
+                                if (! endpoint.isConnected()) {
+                                    instrumented.connect(endpoint, WARM_UP_TIMEOUT, HttpClientContext.create());
+                                }
+                            } catch (IOException | RuntimeException exception) {
+                                instrumented.release(endpoint, null, TimeValue.ZERO_MILLISECONDS);
+                                throw exception;
+                            }
+
+                            endpoints.add(endpoint);
+
+                            if (done.get() && endpoints.remove(endpoint)) {
+                                instrumented.release(endpoint, null, WARM_UP_KEEP_ALIVE);
+                            }
+
+                            return endpoint;
+                        }));
+            }
+
+            for (Future<ConnectionEndpoint> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException(exception.getMessage());
+        } finally {
+            done.set(true);
+            futures.forEach(t -> t.cancel(true));
+
+            for (ConnectionEndpoint endpoint : endpoints) {
+                if (endpoints.remove(endpoint)) {
+                    instrumented.release(endpoint, null, WARM_UP_KEEP_ALIVE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to get the name of the request header that carries the
+     * remaining time (in milliseconds) of the call's {@link Deadline}.
+     * Subclasses may override to use a different header or return
+     * {@code null} to not send the header.
+     *
+     * @return  The header name (default {@link Deadline#HEADER}).
+     */
+    protected String getDeadlineHeader() { return Deadline.HEADER; }
+
+    /**
+     * Method to determine if protocol methods that return a {@link List}
+     * (or {@link java.util.Collection} or {@link Iterable}) of
+     * {@link Long}, {@link Integer}, or {@link Double} decode the
+     * response into an unmodifiable primitive-backed {@link List}
+     * (avoiding boxing) instead of through the {@link ObjectMapper}.
+     * {@code long[]}, {@code int[]}, and {@code double[]} are always
+     * decoded without boxing.  Subclasses may override to enable.
+     *
+     * @return  {@code true} if enabled; {@code false} (the default)
+     *          otherwise.
+     */
+    protected boolean isPrimitiveListDecodingEnabled() { return false; }
+
     @Override
     public void process(HttpRequest request, EntityDetails details, HttpContext context) throws IOException {
     }
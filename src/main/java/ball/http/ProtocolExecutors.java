@@ -0,0 +1,142 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * {@link ExecutorService} factory and fan-out helpers for running
+ * {@link ProtocolClient#proxy()} calls concurrently.  This implementation
+ * uses daemon platform {@link Thread}s; on Java 21 (and later), the
+ * multi-release JAR runs every task on a virtual {@link Thread} (see
+ * {@link #isVirtual()}).
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class ProtocolExecutors {
+    private static final String PREFIX = "ball-http-";
+
+    /**
+     * @return  {@code true} if the {@link ExecutorService}s created by
+     *          this class run tasks on virtual {@link Thread}s;
+     *          {@code false} otherwise.
+     */
+    public static boolean isVirtual() { return Threads.isVirtual(); }
+
+    /**
+     * @return  A {@link ThreadFactory} for protocol call
+     *          {@link Thread}s.
+     */
+    public static ThreadFactory threadFactory() {
+        return Threads.factory(PREFIX);
+    }
+
+    /**
+     * Method to create a new {@link ExecutorService} for protocol calls.
+     * The caller is responsible for shutting down the returned
+     * {@link ExecutorService}.
+     *
+     * @return  A new {@link ExecutorService}.
+     */
+    public static ExecutorService newExecutorService() {
+        return Threads.newExecutorService(threadFactory());
+    }
+
+    /**
+     * @return  The shared {@link ExecutorService} used by
+     *          {@link #invokeAll(Collection)}.
+     */
+    public static ExecutorService executor() { return Shared.EXECUTOR; }
+
+    /**
+     * Method to execute the {@link Callable}s on the shared
+     * {@link #executor()} and wait for all of them to complete.
+     *
+     * @param   <T>             The result type.
+     * @param   tasks           The {@link Callable}s (typically protocol
+     *                          calls through {@link ProtocolClient#proxy()}).
+     *
+     * @return  The results in the iteration order of {@code tasks}.
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting.
+     * @throws  ExecutionException
+     *                          If any task fails (the remaining tasks are
+     *                          cancelled).
+     */
+    public static <T> List<T> invokeAll(Collection<? extends Callable<? extends T>> tasks) throws InterruptedException,
+                                                                                                  ExecutionException {
+        return invokeAll(executor(), tasks);
+    }
+
+    /**
+     * Method to execute the {@link Callable}s on the argument
+     * {@link ExecutorService} and wait for all of them to complete.
+     *
+     * @param   <T>             The result type.
+     * @param   executor        The {@link ExecutorService}.
+     * @param   tasks           The {@link Callable}s (typically protocol
+     *                          calls through {@link ProtocolClient#proxy()}).
+     *
+     * @return  The results in the iteration order of {@code tasks}.
+     *
+     * @throws  InterruptedException
+     *                          If interrupted while waiting.
+     * @throws  ExecutionException
+     *                          If any task fails (the remaining tasks are
+     *                          cancelled).
+     */
+    public static <T> List<T> invokeAll(ExecutorService executor,
+                                        Collection<? extends Callable<? extends T>> tasks) throws InterruptedException,
+                                                                                                  ExecutionException {
+        List<Future<? extends T>> futures = new ArrayList<>(tasks.size());
+        List<T> results = new ArrayList<>(tasks.size());
+
+        try {
+            for (Callable<? extends T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            for (Future<? extends T> future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            if (results.size() < futures.size()) {
+                futures.forEach(t -> t.cancel(true));
+            }
+        }
+
+        return results;
+    }
+
+    private static class Shared {
+        private static final ExecutorService EXECUTOR = newExecutorService();
+    }
+}
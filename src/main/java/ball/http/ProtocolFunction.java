@@ -0,0 +1,48 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+/**
+ * A protocol method call on a {@link ProtocolClient#proxy()} with a
+ * single argument (tuple) for
+ * {@link ProtocolClient#fanOut(ProtocolFunction,Iterable)}.  Typically a
+ * method reference (e.g., {@code API::get}) or a lambda that unpacks a
+ * tuple (e.g., {@code (api, t) -> api.get(t.getLeft(), t.getRight())}).
+ *
+ * @param       <P>             The protocol type.
+ * @param       <A>             The argument (tuple) type.
+ * @param       <R>             The result type.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@FunctionalInterface
+public interface ProtocolFunction<P,A,R> {
+
+    /**
+     * Method to make the call.
+     *
+     * @param   proxy           The {@link ProtocolClient#proxy()}.
+     * @param   argument        The argument (tuple).
+     *
+     * @return  The call result.
+     *
+     * @throws  Exception       If the call fails.
+     */
+    R apply(P proxy, A argument) throws Exception;
+}
@@ -18,14 +18,30 @@ package ball.http;
  * limitations under the License.
  * ##########################################################################
  */
+import ball.http.annotation.Paginated;
+import ball.http.annotation.RangeDownload;
+import ball.http.annotation.Timeout;
 import ball.lang.reflect.DefaultInterfaceMethodInvocationHandler;
+import java.io.InterruptedIOException;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.ToLongFunction;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.core5.http.HttpMessage;
 import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.BasicHttpContext;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * Protocol {@link java.lang.reflect.InvocationHandler} for
@@ -38,7 +54,18 @@ import org.apache.hc.core5.http.HttpResponse;
  * {@link ProtocolClient#context()}.  If the {@link Method#getReturnType()}
  * is {@link HttpResponse} then the response is returned with no further
  * processing (and the caller is responsible for consuming any entities).
+ * If the {@link Method#getReturnType()} is {@link RawResponse}, the
+ * response body is buffered and de-serialization is deferred until
+ * {@link RawResponse#get()}.  If the {@link Method} is annotated with
+ * {@link RangeDownload} (and returns {@link java.nio.file.Path},
+ * {@link java.io.InputStream}, or {@code byte[]}), the resource is
+ * downloaded in parallel segments where the server supports byte ranges.
+ * If the {@link Method} is annotated with {@link Paginated} (and returns
+ * {@link java.util.stream.Stream} or {@link java.util.Iterator}), a lazy
+ * iteration over the items of successive pages is returned.
  * Otherwise, a {@link ProtocolResponseHandler} is provided to the call.
+ * Each call is tracked as a {@link ProtocolCall}.  {@link Timeout}s and
+ * the {@link Deadline} in effect are applied to the request.
  *
  * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
  */
@@ -47,29 +74,310 @@ public class ProtocolInvocationHandler implements DefaultInterfaceMethodInvocati
     @NonNull private final ProtocolClient<?> client;
 
     @Override
+    @SuppressWarnings({ "try" })
     public Object invoke(Object proxy, Method method, Object[] argv) throws Throwable {
         Object result = null;
         Class<?> declarer = method.getDeclaringClass();
 
         if (method.isDefault()) {
-            result = DefaultInterfaceMethodInvocationHandler.super.invoke(proxy, method, argv);
+            try (Deadline.Scope scope = enter(method)) {
+                result = DefaultInterfaceMethodInvocationHandler.super.invoke(proxy, method, argv);
+            }
         } else if (declarer.equals(Object.class)) {
             result = method.invoke(proxy, argv);
         } else {
-            Class<?> returnType = method.getReturnType();
-            HttpMessage request = new ProtocolRequestBuilder(client).build(method, argv);
+            ProtocolCall call = ProtocolCall.begin(client, method);
+            Throwable failure = null;
+
+            try (Deadline.Scope scope = enter(method)) {
+                result = invoke(call, method, argv);
+            } catch (Throwable throwable) {
+                failure = throwable;
+
+                throw throwable;
+            } finally {
+                call.end(failure);
+            }
+        }
+
+        return result;
+    }
+
+    private Object invoke(ProtocolCall call, Method method, Object[] argv) throws Throwable {
+        Object result = null;
+        Class<?> returnType = method.getReturnType();
+        ProtocolRequestBuilder builder = new ProtocolRequestBuilder(client);
+        HttpMessage request = builder.build(method, argv);
 
-            if (returnType.isAssignableFrom(request.getClass())) {
-                result = returnType.cast(request);
-            } else if (returnType.isAssignableFrom(HttpResponse.class)) {
-                result = client.client().execute((HttpUriRequest) request, client.context());
+        call.built(request, builder.getTemplate());
+
+        if (returnType.isAssignableFrom(request.getClass())) {
+            result = returnType.cast(request);
+        } else {
+            client.checkLeasePriority(method);
+
+            Timeouts timeouts = configure(method, request, builder.getDeadline());
+            HttpContext context = (timeouts != null) ? timeouts.context(client.context()) : client.context();
+
+            if (method.isAnnotationPresent(Paginated.class)
+                && Paginator.isSupported(returnType)) {
+                result =
+                    new Paginator(client, method, builder.getTemplate(), context)
+                    .paginate((HttpUriRequest) request, returnType);
+            } else if (method.isAnnotationPresent(RangeDownload.class)
+                       && RangeDownloader.isSupported(returnType)) {
+                RangeDownloader downloader =
+                    new RangeDownloader(client, method.getAnnotation(RangeDownload.class), context);
+
+                result = downloader.download((HttpUriRequest) request, returnType);
             } else {
-                ProtocolResponseHandler handler = new ProtocolResponseHandler(client, method);
+                ScheduledFuture<?> abort = null;
 
-                result = client.client().execute((HttpUriRequest) request, client.context(), handler);
+                if (timeouts != null && timeouts.deadline != null && request instanceof HttpUriRequestBase) {
+                    abort = timeouts.deadline.schedule(((HttpUriRequestBase) request)::cancel);
+                }
+
+                try {
+                    if (returnType.isAssignableFrom(HttpResponse.class)) {
+                        result = client.client().execute((HttpUriRequest) request, context);
+                    } else if (returnType.equals(RawResponse.class)) {
+                        ProtocolResponseHandler handler =
+                            new ProtocolResponseHandler(client, method, getRawResponseTypeArgument(method));
+
+                        result =
+                            client.client().execute((HttpUriRequest) request, context,
+                                                    t -> new RawResponse<>(t, handler));
+                    } else {
+                        ProtocolResponseHandler handler = new ProtocolResponseHandler(client, method);
+
+                        result = client.client().execute((HttpUriRequest) request, context, handler);
+                    }
+                } finally {
+                    if (abort != null) {
+                        abort.cancel(false);
+                    }
+                }
             }
         }
 
         return result;
     }
+
+    /**
+     * Method to put the {@link Method}'s {@link Timeout#total()} (if
+     * specified) in effect as the current {@link Deadline}.
+     *
+     * @param   method          The protocol {@link Method}.
+     *
+     * @return  The {@link Deadline.Scope} ({@code null} if no total
+     *          timeout is specified).
+     */
+    private Deadline.Scope enter(Method method) {
+        long total = timeout(method, Timeout::total);
+
+        return (total >= 0) ? Deadline.after(total, MILLISECONDS).enter() : null;
+    }
+
+    /**
+     * Method to determine the {@link Method}'s {@link Timeout}s and the
+     * {@link Deadline} in effect for a request.  The time remaining when
+     * each request (including any follow-up page or range request) is
+     * sent is set in the {@link ProtocolClient#getDeadlineHeader()}
+     * header unless the caller supplied that header.
+     *
+     * @param   method          The protocol {@link Method}.
+     * @param   request         The request {@link HttpMessage}.
+     * @param   argument        The {@link Deadline} method argument (may
+     *                          be {@code null}).
+     *
+     * @return  The {@link Timeouts} ({@code null} if none apply).
+     *
+     * @throws  InterruptedIOException
+     *                          If the {@link Deadline} has passed.
+     */
+    private Timeouts configure(Method method, HttpMessage request, Deadline argument) throws InterruptedIOException {
+        Timeouts timeouts = null;
+        Deadline deadline = Deadline.min(Deadline.current(), argument);
+        long connect = timeout(method, Timeout::connect);
+        long response = timeout(method, Timeout::response);
+
+        String header = null;
+
+        if (deadline != null) {
+            deadline.check();
+
+            header = client.getDeadlineHeader();
+
+            if (header != null && request.containsHeader(header)) {
+                header = null;
+            }
+        }
+
+        if (deadline != null || connect >= 0 || response >= 0) {
+            timeouts = new Timeouts(connect, response, deadline, header);
+        }
+
+        return timeouts;
+    }
+
+    private long timeout(Method method, ToLongFunction<Timeout> element) {
+        long value = -1;
+        Timeout annotation = method.getAnnotation(Timeout.class);
+
+        if (annotation != null) {
+            value = element.applyAsLong(annotation);
+        }
+
+        if (value < 0) {
+            annotation = method.getDeclaringClass().getAnnotation(Timeout.class);
+
+            if (annotation != null) {
+                value = element.applyAsLong(annotation);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Method to pre-build everything
+     * {@link #invoke(Object,Method,Object[])} would otherwise build lazily
+     * on the first call of a protocol {@link Method}: the request plan
+     * and {@link UriTemplate}, the request body codecs, and the response
+     * de-serializers.
+     *
+     * @param   method          The protocol {@link Method}.
+     *
+     * @return  The {@link Method}'s compiled {@link UriTemplate}.
+     *
+     * @throws  Throwable       If the {@link Method} cannot be processed.
+     */
+    public UriTemplate warmUp(Method method) throws Throwable {
+        UriTemplate template = new ProtocolRequestBuilder(client).warmUp(method);
+        Class<?> returnType = method.getReturnType();
+
+        if (returnType.equals(RawResponse.class)) {
+            new ProtocolResponseHandler(client, method, getRawResponseTypeArgument(method)).warmUp();
+        } else if (method.isAnnotationPresent(Paginated.class)
+                   && Paginator.isSupported(returnType)) {
+            new ProtocolResponseHandler(client, method, Paginator.getElementType(method)).warmUp();
+        } else if (! (returnType.equals(Void.TYPE)
+                      || HttpMessage.class.isAssignableFrom(returnType)
+                      || returnType.isAssignableFrom(HttpResponse.class)
+                      || (method.isAnnotationPresent(RangeDownload.class)
+                          && RangeDownloader.isSupported(returnType)))) {
+            new ProtocolResponseHandler(client, method).warmUp();
+        }
+
+        return template;
+    }
+
+    private Type getRawResponseTypeArgument(Method method) {
+        Type type = null;
+        Type generic = method.getGenericReturnType();
+
+        if (generic instanceof ParameterizedType) {
+            type = ((ParameterizedType) generic).getActualTypeArguments()[0];
+        }
+
+        if (! (type instanceof Class<?> || type instanceof ParameterizedType || type instanceof GenericArrayType)) {
+            type = Object.class;
+        }
+
+        return type;
+    }
+
+    /**
+     * {@link ExecChainHandler} (installed first in the
+     * {@link ProtocolClient#client()} execution chain) that applies the
+     * {@link Timeouts} bound to the request's {@link HttpContext} (if
+     * any).  The effective {@link RequestConfig} (the request's, the
+     * context's, or the client's default) is copied with the connection
+     * request, connect, and response timeouts limited to the time
+     * remaining so the client's other settings are preserved, and the
+     * deadline header is set to the time remaining.
+     */
+    static final ExecChainHandler EXEC_INTERCEPTOR =
+        (request, scope, chain) -> {
+            Object object = scope.clientContext.getAttribute(Timeouts.ATTRIBUTE);
+
+            if (object instanceof Timeouts) {
+                Timeouts timeouts = (Timeouts) object;
+
+                scope.clientContext.setRequestConfig(timeouts.apply(scope.clientContext.getRequestConfig()));
+
+                if (timeouts.header != null) {
+                    request.setHeader(timeouts.header,
+                                      String.valueOf(Math.max(1, timeouts.deadline.remaining(MILLISECONDS))));
+                }
+            }
+
+            return chain.proceed(request, scope);
+        };
+
+    /**
+     * A call's {@link Timeout}s and {@link Deadline}.
+     */
+    @ToString
+    static class Timeouts {
+        static final String ATTRIBUTE = Timeouts.class.getName();
+
+        final long connect;
+        final long response;
+        final Deadline deadline;
+        final String header;
+
+        Timeouts(long connect, long response, Deadline deadline, String header) {
+            this.connect = connect;
+            this.response = response;
+            this.deadline = deadline;
+            this.header = header;
+        }
+
+        /**
+         * Method to create a per-call {@link HttpContext} that binds
+         * {@link.this} {@link Timeouts}.  Attributes the client sets
+         * during execution (including the {@link RequestConfig}) are set
+         * in the per-call context and not in {@code parent}.
+         *
+         * @param   parent          The parent {@link HttpContext}.
+         *
+         * @return  The per-call {@link HttpContext}.
+         */
+        HttpContext context(HttpContext parent) {
+            HttpContext context = new BasicHttpContext(parent);
+
+            context.setAttribute(ATTRIBUTE, this);
+
+            return context;
+        }
+
+        @SuppressWarnings({ "deprecation" })
+        RequestConfig apply(RequestConfig config) throws InterruptedIOException {
+            long connect = this.connect;
+            long response = this.response;
+            RequestConfig.Builder builder = RequestConfig.copy((config != null) ? config : RequestConfig.DEFAULT);
+
+            if (deadline != null) {
+                deadline.check();
+
+                long remaining = Math.max(1, deadline.remaining(MILLISECONDS));
+
+                connect = (connect >= 0) ? Math.min(connect, remaining) : remaining;
+                response = (response >= 0) ? Math.min(response, remaining) : remaining;
+
+                builder.setConnectionRequestTimeout(remaining, MILLISECONDS);
+            }
+
+            if (connect >= 0) {
+                builder.setConnectTimeout(connect, MILLISECONDS);
+            }
+
+            if (response >= 0) {
+                builder.setResponseTimeout(response, MILLISECONDS);
+            }
+
+            return builder.build();
+        }
+    }
 }
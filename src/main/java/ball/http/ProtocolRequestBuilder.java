@@ -18,20 +18,26 @@ package ball.http;
  * limitations under the License.
  * ##########################################################################
  */
-import ball.activation.ByteArrayDataSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.stream.Stream;
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.BeanParam;
@@ -55,7 +61,7 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.HttpHeaders;
-import javax.ws.rs.core.UriBuilder;
+import javax.xml.bind.JAXBException;
 import lombok.ToString;
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
@@ -74,10 +80,15 @@ import org.apache.hc.core5.http.HttpEntityContainer;
 import org.apache.hc.core5.http.HttpMessage;
 import org.apache.hc.core5.http.NameValuePair;
 import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.FileEntity;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
 import org.apache.hc.core5.http.message.BasicNameValuePair;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -118,6 +129,15 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
  *
  * {@include #PARAMETER_TYPES}
  * </p>
+ * <p>
+ * Request bodies are encoded according to the first supported
+ * {@link Produces} media type (JSON if none is specified).  Jackson
+ * formats (see {@link JacksonDataFormat}) are encoded through
+ * {@link ProtocolClient#getObjectMapper(JacksonDataFormat)}; other media
+ * types are encoded by the method named for the MIME type (e.g.,
+ * {@link #APPLICATION_XML(ContentType,Object)}) which subclasses may
+ * override or supplement.
+ * </p>
  * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
  */
 @ToString
@@ -175,10 +195,15 @@ public class ProtocolRequestBuilder {
 
     private final ProtocolClient<?> client;
     private transient HttpMessage request = null;
-    private transient UriBuilder uri = UriBuilder.fromUri(EMPTY);
-    private transient TreeMap<String,Object> templateValues = new TreeMap<>();
-    private transient TreeMap<String,String> headers = new TreeMap<>();
+    private transient String template = EMPTY;
+    private transient URI base = null;
+    private transient HashMap<String,Object> templateValues = new HashMap<>();
+    private transient LinkedHashMap<String,Object> matrix = null;
+    private transient LinkedHashMap<String,Object> query = null;
+    private transient LinkedHashMap<String,String> headers = null;
     private transient Object body = null;
+    private transient ContentType produces = null;
+    private transient Deadline deadline = null;
 
     /**
      * Sole constructor.
@@ -208,16 +233,19 @@ public class ProtocolRequestBuilder {
         /*
          * Headers
          */
-        for (Map.Entry<String,String> entry : headers.entrySet()) {
-            if (! request.containsHeader(entry.getKey())) {
-                request.setHeader(entry.getKey(), entry.getValue());
+        if (headers != null) {
+            for (Map.Entry<String,String> entry : headers.entrySet()) {
+                if (! request.containsHeader(entry.getKey())) {
+                    request.setHeader(entry.getKey(), entry.getValue());
+                }
             }
         }
         /*
          * URI
          */
         if (request instanceof HttpUriRequestBase) {
-            ((HttpUriRequestBase) request).setUri(uri.resolveTemplates(templateValues).build());
+            ((HttpUriRequestBase) request)
+                .setUri(UriTemplate.compile(template).expand(templateValues, matrix, query, base));
         }
         /*
          * Body
@@ -229,7 +257,7 @@ public class ProtocolRequestBuilder {
         } else if (body instanceof Form) {
             entity = new UrlEncodedFormEntity((Form) body);
         } else if (body != null) {
-            entity = new JSONHttpEntity(body);
+            entity = entity((produces != null) ? produces : ContentType.APPLICATION_JSON, body);
         }
 
         if (entity != null) {
@@ -239,7 +267,68 @@ public class ProtocolRequestBuilder {
         return request;
     }
 
+    /**
+     * @return  The URI template {@link String} (complete after
+     *          {@link #build(Method,Object[])}).
+     */
+    public String getTemplate() { return template; }
+
+    /**
+     * @return  The {@link Deadline} method argument (if any; complete
+     *          after {@link #build(Method,Object[])}).
+     */
+    public Deadline getDeadline() { return deadline; }
+
+    /**
+     * Method to process a protocol {@link Method}'s type and method
+     * {@link Annotation}s (without arguments) and pre-build the request
+     * body codecs for its entity parameters.  See
+     * {@link ProtocolClient#warmUp(int,URI...)}.
+     *
+     * @param   method          The interface {@link Method}.
+     *
+     * @return  The compiled {@link UriTemplate}.
+     *
+     * @throws  Throwable       If the {@link Method} cannot be processed.
+     */
+    public UriTemplate warmUp(Method method) throws Throwable {
+        process(method.getDeclaringClass(), method);
+
+        ContentType type = (produces != null) ? produces : ContentType.APPLICATION_JSON;
+        JacksonDataFormat format = jackson(type);
+
+        for (Parameter parameter : method.getParameters()) {
+            Class<?> argument = parameter.getType();
+
+            if (parameter.getAnnotations().length == 0
+                && (! (HttpMessage.class.isAssignableFrom(argument)
+                       || HttpEntity.class.isAssignableFrom(argument)
+                       || URI.class.isAssignableFrom(argument)
+                       || Deadline.class.isAssignableFrom(argument)))) {
+                if (format != null) {
+                    ObjectMapper om = client.getObjectMapper(format);
+
+                    om.writerFor(om.getTypeFactory().constructType(parameter.getParameterizedType()));
+                } else if (name(type).endsWith("_XML")) {
+                    client.getJAXBContext();
+                }
+            }
+        }
+
+        return UriTemplate.compile(template);
+    }
+
     private void process(Class<?> type, Method method, Object... argv) throws Throwable {
+        process(type, method);
+
+        Parameter[] parameters = method.getParameters();
+
+        for (int i = 0; i < parameters.length; i += 1) {
+            process(parameters[i], argv[i]);
+        }
+    }
+
+    private void process(Class<?> type, Method method) throws Throwable {
         for (Annotation annotation : type.getAnnotations()) {
             try {
                 if (TYPE_ANNOTATIONS.contains(annotation.annotationType())) {
@@ -269,12 +358,6 @@ public class ProtocolRequestBuilder {
                 throw exception.getTargetException();
             }
         }
-
-        Parameter[] parameters = method.getParameters();
-
-        for (int i = 0; i < parameters.length; i += 1) {
-            process(parameters[i], argv[i]);
-        }
     }
 
     private void process(Parameter parameter, Object argument) throws Throwable {
@@ -316,6 +399,114 @@ public class ProtocolRequestBuilder {
         MethodUtils.invokeMethod(this, true, name, argv, parameters);
     }
 
+    private Stream<String> mediaTypes(String[] values) {
+        return Stream.of(values).flatMap(t -> Stream.of(t.split(","))).map(String::trim).filter(t -> (! t.isEmpty()));
+    }
+
+    private String name(ContentType type) {
+        return type.getMimeType().replaceAll("[^\\p{Alnum}]", "_").toUpperCase();
+    }
+
+    private JacksonDataFormat jackson(ContentType type) {
+        JacksonDataFormat format = JacksonDataFormat.forMimeType(type.getMimeType());
+
+        if (format == null && type.getMimeType().toLowerCase().endsWith("+json")) {
+            format = JacksonDataFormat.JSON;
+        }
+
+        return format;
+    }
+
+    private HttpEntity entity(ContentType type, Object body) throws Throwable {
+        HttpEntity entity = null;
+        JacksonDataFormat format = jackson(type);
+
+        if (format != null) {
+            entity = new JacksonHttpEntity(type, format, body);
+        } else {
+            try {
+                entity =
+                    (HttpEntity)
+                    MethodUtils.invokeMethod(this, true, name(type),
+                                             new Object[] { type, body },
+                                             new Class<?>[] { ContentType.class, Object.class });
+            } catch (NoSuchMethodException exception) {
+                if (type.getMimeType().toLowerCase().startsWith("text/")) {
+                    entity = TEXT_PLAIN(type, body);
+                } else {
+                    throw new UnsupportedOperationException(type.toString(), exception);
+                }
+            } catch (InvocationTargetException exception) {
+                throw exception.getTargetException();
+            }
+        }
+
+        return entity;
+    }
+
+    private boolean isEncodable(ContentType type) {
+        boolean encodable = false;
+        JacksonDataFormat format = jackson(type);
+
+        if (format != null) {
+            encodable = format.isAvailable();
+        } else {
+            encodable =
+                type.getMimeType().toLowerCase().startsWith("text/")
+                || (MethodUtils.getMatchingMethod(getClass(), name(type), ContentType.class, Object.class) != null);
+        }
+
+        return encodable;
+    }
+
+    private String accept(Consumes annotation) {
+        List<String> types = mediaTypes(annotation.value()).filter(this::isDecodable).collect(toList());
+        /*
+         * Every listed type is an unavailable Jackson dataformat: ask
+         * for JSON (as ProtocolResponseHandler decodes) rather than send
+         * an empty Accept header.
+         */
+        if (types.isEmpty()) {
+            types.add(JacksonDataFormat.JSON.getMimeType());
+        }
+        /*
+         * Weight the available binary Jackson dataformats above the
+         * other (unweighted) types so a server that can produce either
+         * sends the more compact encoding.
+         */
+        boolean binary = types.stream().anyMatch(this::isBinary);
+
+        return types.stream()
+            .map(t -> (binary && (! isBinary(t)) && ContentType.parseLenient(t).getParameter("q") == null) ? t + "; q=0.9" : t)
+            .collect(joining(", "));
+    }
+
+    private boolean isBinary(String type) {
+        JacksonDataFormat format = JacksonDataFormat.forMimeType(type);
+
+        return (format != null && format != JacksonDataFormat.JSON);
+    }
+
+    private boolean isDecodable(String type) {
+        JacksonDataFormat format = JacksonDataFormat.forMimeType(type);
+
+        return (format == null || format.isAvailable());
+    }
+
+    private ContentType produces(Produces annotation) {
+        ContentType type =
+            mediaTypes(annotation.value())
+            .map(ContentType::parseLenient)
+            .filter(this::isEncodable)
+            .findFirst().orElse(null);
+
+        if (type == null) {
+            throw new UnsupportedOperationException(annotation.toString());
+        }
+
+        return type;
+    }
+
     /**
      * {@link ApplicationPath} type (interface) {@link Annotation}
      *
@@ -327,7 +518,7 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void type(ApplicationPath annotation, Class<?> type) throws Throwable {
-        uri = uri.uri(annotation.value());
+        template = annotation.value();
     }
 
     /**
@@ -354,7 +545,11 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void type(Consumes annotation, Class<?> type) throws Throwable {
-        headers.put(HttpHeaders.ACCEPT, Stream.of(annotation.value()).collect(joining(", ")));
+        if (headers == null) {
+            headers = new LinkedHashMap<>();
+        }
+
+        headers.put(HttpHeaders.ACCEPT, accept(annotation));
     }
 
     /**
@@ -367,7 +562,7 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void type(Path annotation, Class<?> type) throws Throwable {
-        uri = uri.path(annotation.value());
+        template = UriTemplate.append(template, annotation.value());
     }
 
     /**
@@ -380,7 +575,7 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void type(Produces annotation, Class<?> type) throws Throwable {
-        throw new UnsupportedOperationException(annotation.toString());
+        produces = produces(annotation);
     }
 
     /**
@@ -407,7 +602,7 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void method(Consumes annotation, Method method) throws Throwable {
-        request.setHeader(HttpHeaders.ACCEPT, Stream.of(annotation.value()).collect(joining(", ")));
+        request.setHeader(HttpHeaders.ACCEPT, accept(annotation));
     }
 
     /**
@@ -537,7 +732,7 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void method(Path annotation, Method method) throws Throwable {
-        uri = uri.path(annotation.value());
+        template = UriTemplate.append(template, annotation.value());
     }
 
     /**
@@ -589,7 +784,7 @@ public class ProtocolRequestBuilder {
      *                          configured.
      */
     protected void method(Produces annotation, Method method) throws Throwable {
-        throw new UnsupportedOperationException(annotation.toString());
+        produces = produces(annotation);
     }
 
     /**
@@ -695,7 +890,15 @@ public class ProtocolRequestBuilder {
                              Object argument) throws Throwable {
         String name = isNotBlank(annotation.value()) ? annotation.value() : parameter.getName();
 
-        uri = uri.replaceMatrixParam(name, argument);
+        if (argument != null) {
+            if (matrix == null) {
+                matrix = new LinkedHashMap<>();
+            }
+
+            matrix.put(name, argument);
+        } else if (matrix != null) {
+            matrix.remove(name);
+        }
     }
 
     /**
@@ -733,7 +936,15 @@ public class ProtocolRequestBuilder {
     protected void parameter(QueryParam annotation, Parameter parameter, Object argument) throws Throwable {
         String name = isNotBlank(annotation.value()) ? annotation.value() : parameter.getName();
 
-        uri = uri.replaceQueryParam(name, argument);
+        if (argument != null) {
+            if (query == null) {
+                query = new LinkedHashMap<>();
+            }
+
+            query.put(name, argument);
+        } else if (query != null) {
+            query.remove(name);
+        }
     }
 
     /**
@@ -769,7 +980,20 @@ public class ProtocolRequestBuilder {
      * @throws  Throwable       If the argument cannot be configured.
      */
     protected void parameter(Parameter parameter, URI argument) throws Throwable {
-        uri = uri.uri(argument);
+        base = argument;
+    }
+
+    /**
+     * {@link Deadline} method parameter
+     *
+     * @param   parameter       The {@link Method} {@link Parameter}.
+     * @param   argument        The {@link Deadline} (may be
+     *                          {@code null}).
+     *
+     * @throws  Throwable       If the argument cannot be configured.
+     */
+    protected void parameter(Parameter parameter, Deadline argument) throws Throwable {
+        deadline = argument;
     }
 
     /**
@@ -784,6 +1008,83 @@ public class ProtocolRequestBuilder {
         body = argument;
     }
 
+    /**
+     * {@code application/octet-stream} request body codec.  Supports
+     * {@code byte[]}, {@link InputStream}, {@link File}, and
+     * {@link java.nio.file.Path} bodies.
+     *
+     * @param   type            The {@link ContentType}.
+     * @param   body            The request body {@link Object}.
+     *
+     * @return  The {@link HttpEntity}.
+     *
+     * @throws  Throwable       If the body cannot be encoded.
+     */
+    protected HttpEntity APPLICATION_OCTET_STREAM(ContentType type, Object body) throws Throwable {
+        HttpEntity entity = null;
+
+        if (body instanceof byte[]) {
+            entity = new ByteArrayEntity((byte[]) body, type);
+        } else if (body instanceof InputStream) {
+            entity = new InputStreamEntity((InputStream) body, type);
+        } else if (body instanceof File) {
+            entity = new FileEntity((File) body, type);
+        } else if (body instanceof java.nio.file.Path) {
+            entity = new FileEntity(((java.nio.file.Path) body).toFile(), type);
+        } else {
+            throw new IllegalArgumentException(type + ": " + body.getClass().getName());
+        }
+
+        return entity;
+    }
+
+    /**
+     * {@code application/xml} request body codec.  Marshals the body
+     * through a {@link ProtocolClient#createMarshaller(Charset)} of its
+     * own (in the {@link ContentType}'s charset, UTF-8 if none).
+     *
+     * @param   type            The {@link ContentType}.
+     * @param   body            The request body {@link Object}.
+     *
+     * @return  The {@link HttpEntity}.
+     *
+     * @throws  Throwable       If the body cannot be encoded.
+     */
+    protected HttpEntity APPLICATION_XML(ContentType type, Object body) throws Throwable {
+        return new XMLHttpEntity(type, body);
+    }
+
+    /**
+     * {@code text/plain} (and default {@code text/*}) request body codec.
+     * Writes {@link String#valueOf(Object)} in the {@link ContentType}
+     * charset (UTF-8 if unspecified).
+     *
+     * @param   type            The {@link ContentType}.
+     * @param   body            The request body {@link Object}.
+     *
+     * @return  The {@link HttpEntity}.
+     *
+     * @throws  Throwable       If the body cannot be encoded.
+     */
+    protected HttpEntity TEXT_PLAIN(ContentType type, Object body) throws Throwable {
+        return new TextHttpEntity((type.getCharset() != null) ? type : type.withCharset(UTF_8), body);
+    }
+
+    /**
+     * {@code text/xml} request body codec.  See
+     * {@link #APPLICATION_XML(ContentType,Object)}.
+     *
+     * @param   type            The {@link ContentType}.
+     * @param   body            The request body {@link Object}.
+     *
+     * @return  The {@link HttpEntity}.
+     *
+     * @throws  Throwable       If the body cannot be encoded.
+     */
+    protected HttpEntity TEXT_XML(ContentType type, Object body) throws Throwable {
+        return APPLICATION_XML(type, body);
+    }
+
     private class Form extends ArrayList<NameValuePair> {
         private static final long serialVersionUID = -738222384949508109L;
 
@@ -811,13 +1112,16 @@ public class ProtocolRequestBuilder {
 
         @Override
         public InputStream getContent() throws IOException, IllegalStateException {
-            ByteArrayDataSource ds = new ByteArrayDataSource(null, null);
+            PooledByteArrayOutputStream out = new PooledByteArrayOutputStream();
 
-            try (OutputStream out = ds.getOutputStream()) {
+            try {
                 writeTo(out);
+            } catch (IOException | RuntimeException exception) {
+                out.close();
+                throw exception;
             }
 
-            return ds.getInputStream();
+            return out.toInputStream();
         }
 
         @Override
@@ -827,14 +1131,55 @@ public class ProtocolRequestBuilder {
         public void close() { }
     }
 
-    private class JSONHttpEntity extends HttpEntityImpl {
-        public JSONHttpEntity(Object object) {
-            super(ContentType.APPLICATION_JSON, object);
+    private class JacksonHttpEntity extends HttpEntityImpl {
+        private final JacksonDataFormat format;
+
+        public JacksonHttpEntity(ContentType type, JacksonDataFormat format, Object object) {
+            super(type, object);
+
+            this.format = requireNonNull(format, "format");
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            client.getObjectMapper(format).writeValue(out, object);
+        }
+    }
+
+    private class XMLHttpEntity extends HttpEntityImpl {
+        private final Charset charset;
+
+        public XMLHttpEntity(ContentType type, Object object) {
+            super(type, object);
+
+            this.charset = (type.getCharset() != null) ? type.getCharset() : UTF_8;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try {
+                client.createMarshaller(charset).marshal(object, out);
+            } catch (JAXBException exception) {
+                throw new IOException(exception);
+            }
+        }
+    }
+
+    private class TextHttpEntity extends HttpEntityImpl {
+        private final Charset charset;
+
+        public TextHttpEntity(ContentType type, Object object) {
+            super(type, object);
+
+            this.charset = type.getCharset();
         }
 
         @Override
         public void writeTo(OutputStream out) throws IOException {
-            client.getObjectMapper().writeValue(out, object);
+            Writer writer = new OutputStreamWriter(out, charset);
+
+            writer.write(String.valueOf(object));
+            writer.flush();
         }
     }
 }
@@ -18,6 +18,7 @@ package ball.http;
  * limitations under the License.
  * ##########################################################################
  */
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
@@ -29,10 +30,19 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 /* import java.lang.reflect.TypeVariable; */
 /* import java.lang.reflect.WildcardType; */
+import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.ws.rs.Consumes;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
 import lombok.ToString;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.reflect.TypeUtils;
 import org.apache.hc.client5.http.ClientProtocolException;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.ContentType;
@@ -40,14 +50,20 @@ import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpEntityContainer;
 import org.apache.hc.core5.http.HttpException;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.util.Objects.requireNonNull;
 
 /**
  * {@link ProtocolClient} {@link HttpClientResponseHandler} implementation.
- * Makes use of {@link ProtocolClient#getUnmarshaller()} and
- * {@link ProtocolClient#getObjectMapper()} for de-serialization.
+ * Makes use of {@link ProtocolClient#createUnmarshaller()} and
+ * {@link ProtocolClient#getObjectMapper(JacksonDataFormat)} for
+ * de-serialization.  The response entity {@code Content-Type} selects the
+ * method named for the MIME type (e.g., {@code APPLICATION_JSON}); see
+ * {@link JacksonDataFormat} for the supported binary formats.  Numeric
+ * array return types (e.g., {@code long[]} or {@code List<Long>}) and
+ * columnar {@link Map}s of them are streamed into primitive buffers
+ * without boxing.
  *
  * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
  */
@@ -55,18 +71,33 @@ import static java.util.Objects.requireNonNull;
 public class ProtocolResponseHandler implements HttpClientResponseHandler<Object> {
     private final ProtocolClient<?> client;
     private final Method method;
+    private final Type type;
 
     /**
-     * Sole constructor.
+     * Constructor to de-serialize the protocol {@link Method}'s
+     * {@link Method#getGenericReturnType()}.
      *
      * @param   client          The {@link ProtocolClient}.
      * @param   method          The protocol {@link Method}.
      */
     protected ProtocolResponseHandler(ProtocolClient<?> client, Method method) {
+        this(client, method, method.getGenericReturnType());
+    }
+
+    /**
+     * Constructor to de-serialize a specified {@link Type} (e.g., the
+     * type argument of a {@link RawResponse} return type).
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   method          The protocol {@link Method}.
+     * @param   type            The {@link Type} to de-serialize.
+     */
+    protected ProtocolResponseHandler(ProtocolClient<?> client, Method method, Type type) {
         super();
 
         this.client = requireNonNull(client, "client");
         this.method = requireNonNull(method, "method");
+        this.type = requireNonNull(type, "type");
     }
 
     @Override
@@ -74,8 +105,30 @@ public class ProtocolResponseHandler implements HttpClientResponseHandler<Object
         Object object = null;
 
         if (response instanceof HttpEntityContainer) {
-            HttpEntity entity = ((HttpEntityContainer) response).getEntity();
+            object = handleEntity(((HttpEntityContainer) response).getEntity());
+        }
+
+        Class<?> raw = ClassUtils.primitiveToWrapper(TypeUtils.getRawType(type, null));
+
+        return (raw != null) ? raw.cast(object) : object;
+    }
 
+    /**
+     * Method to de-serialize an {@link HttpEntity}.  The entity
+     * {@code Content-Type} selects the method named for the MIME type.
+     *
+     * @param   entity          The {@link HttpEntity} (may be
+     *                          {@code null}).
+     *
+     * @return  The de-serialized {@link Object}.
+     *
+     * @throws  HttpException   If the entity cannot be processed.
+     * @throws  IOException     If the entity cannot be read.
+     */
+    public Object handleEntity(HttpEntity entity) throws HttpException, IOException {
+        Object object = null;
+
+        if (entity != null) {
             try {
                 String name =
                     ContentType.parseLenient(entity.getContentType())
@@ -87,7 +140,7 @@ public class ProtocolResponseHandler implements HttpClientResponseHandler<Object
                     .getDeclaredMethod(name, HttpEntity.class)
                     .invoke(this, entity);
             } catch (NoSuchMethodException exception) {
-                object = EntityUtils.toString(entity);
+                object = toString(entity);
             } catch (Exception exception) {
                 if (exception instanceof HttpException) {
                     throw (HttpException) exception;
@@ -99,17 +152,97 @@ public class ProtocolResponseHandler implements HttpClientResponseHandler<Object
             }
         }
 
-        return method.getReturnType().cast(object);
+        return object;
+    }
+
+    /**
+     * Method to pre-build the de-serializers for {@link.this} handler's
+     * {@link Type}: the Jackson root deserializer for every Jackson format
+     * named in the protocol {@link Method}'s (or interface's)
+     * {@link Consumes} (JSON if none) and the
+     * {@link ProtocolClient#getJAXBContext()} for JAXB types.  See
+     * {@link ProtocolClient#warmUp(int,java.net.URI...)}.
+     */
+    public void warmUp() {
+        Class<?> raw = TypeUtils.getRawType(type, null);
+
+        if (raw != null && (raw.isAnnotationPresent(XmlRootElement.class) || raw.isAnnotationPresent(XmlType.class))) {
+            client.getJAXBContext();
+        }
+
+        if (! NumericArrayDecoder.isSupported(type, client.isPrimitiveListDecodingEnabled())) {
+            Consumes consumes = method.getAnnotation(Consumes.class);
+
+            if (consumes == null) {
+                consumes = method.getDeclaringClass().getAnnotation(Consumes.class);
+            }
+
+            Set<JacksonDataFormat> formats = EnumSet.noneOf(JacksonDataFormat.class);
+
+            if (consumes != null) {
+                Stream.of(consumes.value())
+                    .flatMap(t -> Stream.of(t.split(",")))
+                    .map(t -> JacksonDataFormat.forMimeType(ContentType.parseLenient(t.trim()).getMimeType()))
+                    .filter(t -> t != null && t.isAvailable())
+                    .forEach(formats::add);
+            }
+
+            if (formats.isEmpty()) {
+                formats.add(JacksonDataFormat.JSON);
+            }
+
+            for (JacksonDataFormat format : formats) {
+                ObjectMapper om = client.getObjectMapper(format);
+
+                om.readerFor(getJavaTypeFrom(om.getTypeFactory(), type));
+            }
+        }
+    }
+
+    private String toString(HttpEntity entity) throws IOException {
+        ContentType type = ContentType.parseLenient(entity.getContentType());
+        Charset charset = (type != null) ? type.getCharset() : null;
+
+        try (InputStream in = entity.getContent();
+             PooledByteArrayOutputStream out = new PooledByteArrayOutputStream()) {
+            return (in != null) ? out.readFrom(in).toString((charset != null) ? charset : ISO_8859_1) : null;
+        }
     }
 
     protected Object APPLICATION_JSON(HttpEntity entity) throws ClientProtocolException, IOException {
+        return jackson(JacksonDataFormat.JSON, entity);
+    }
+
+    protected Object APPLICATION_X_JACKSON_SMILE(HttpEntity entity) throws ClientProtocolException, IOException {
+        return jackson(JacksonDataFormat.SMILE, entity);
+    }
+
+    protected Object APPLICATION_CBOR(HttpEntity entity) throws ClientProtocolException, IOException {
+        return jackson(JacksonDataFormat.CBOR, entity);
+    }
+
+    protected Object APPLICATION_X_MSGPACK(HttpEntity entity) throws ClientProtocolException, IOException {
+        return jackson(JacksonDataFormat.MSGPACK, entity);
+    }
+
+    protected Object APPLICATION_MSGPACK(HttpEntity entity) throws ClientProtocolException, IOException {
+        return jackson(JacksonDataFormat.MSGPACK, entity);
+    }
+
+    private Object jackson(JacksonDataFormat format, HttpEntity entity) throws ClientProtocolException, IOException {
         Object object = null;
-        ObjectMapper om = client.getObjectMapper();
-        TypeFactory factory = om.getTypeFactory();
-        JavaType type = getJavaTypeFrom(factory, method.getGenericReturnType());
+        ObjectMapper om = client.getObjectMapper(format);
+        if (NumericArrayDecoder.isSupported(type, client.isPrimitiveListDecodingEnabled())) {
+            try (InputStream in = entity.getContent();
+                 JsonParser parser = om.getFactory().createParser(in)) {
+                object = NumericArrayDecoder.decode(om, parser, type);
+            }
+        } else {
+            JavaType java = getJavaTypeFrom(om.getTypeFactory(), type);
 
-        try (InputStream in = entity.getContent()) {
-            object = om.readValue(in, type);
+            try (InputStream in = entity.getContent()) {
+                object = om.readValue(in, java);
+            }
         }
 
         return object;
@@ -160,7 +293,7 @@ public class ProtocolResponseHandler implements HttpClientResponseHandler<Object
         Object object = null;
 
         try (InputStream in = entity.getContent()) {
-            object = client.getUnmarshaller().unmarshal(in);
+            object = client.createUnmarshaller().unmarshal(in);
         } catch (JAXBException exception) {
             throw new IOException(exception);
         }
@@ -0,0 +1,198 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.ToString;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpRequestInterceptor;
+import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Transport shared by any number of {@link ProtocolClient} views (see
+ * {@link ProtocolClient#ProtocolClient(ProtocolTransport,HttpCoreContext,Class)}).
+ * The views share one {@link CloseableHttpClient}, connection pool, and
+ * {@link ObjectMapper} (and therefore Jackson's serializer caches) while
+ * each keeps its own {@link ProtocolClient#context()}, interceptor
+ * methods, and {@link ProtocolCallListener}s.  Per-view credentials are
+ * configured into the view's context (e.g., with
+ * {@link org.apache.hc.client5.http.protocol.HttpClientContext}
+ * {@code setCredentialsProvider}).
+ * <p>
+ * The shared {@link CloseableHttpClient}'s interceptors dispatch to the
+ * {@link ProtocolClient} bound to the request's {@link HttpContext}
+ * (attribute {@link #CLIENT}) so requests executed directly through
+ * {@link #client()} must be executed with a view's
+ * {@link ProtocolClient#context()} to be intercepted.
+ * </p>
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "manager" })
+public class ProtocolTransport implements Closeable {
+
+    /**
+     * {@link HttpContext} attribute name of the {@link ProtocolClient}
+     * view.
+     */
+    public static final String CLIENT = ProtocolClient.class.getName();
+
+    private final CloseableHttpClient client;
+    private final HttpClientConnectionManager manager;
+    private final InstrumentedConnectionManager instrumented;
+    private final ConcurrentHashMap<JacksonDataFormat,ObjectMapper> mappers = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper;
+
+    /**
+     * Constructor that creates {@link HttpClientBuilder} and a pooling
+     * {@link HttpClientConnectionManager}.
+     */
+    public ProtocolTransport() {
+        this(HttpClientBuilder.create(), PoolingHttpClientConnectionManagerBuilder.create().build());
+    }
+
+    /**
+     * Constructor that allows the caller to provide a configured
+     * {@link HttpClientBuilder} and {@link HttpClientConnectionManager}.
+     *
+     * @param   builder         A configured {@link HttpClientBuilder}.
+     * @param   manager         The {@link HttpClientConnectionManager}
+     *                          to configure into the
+     *                          {@link HttpClientBuilder}.
+     */
+    public ProtocolTransport(HttpClientBuilder builder, HttpClientConnectionManager manager) {
+        this(builder, manager, new ObjectMapper());
+    }
+
+    /**
+     * Constructor that allows the caller to provide a configured
+     * {@link HttpClientBuilder}, {@link HttpClientConnectionManager}, and
+     * {@link ObjectMapper}.
+     *
+     * @param   builder         A configured {@link HttpClientBuilder}.
+     * @param   manager         The {@link HttpClientConnectionManager}
+     *                          to configure into the
+     *                          {@link HttpClientBuilder}.
+     * @param   mapper          The shared {@link ObjectMapper}.
+     */
+    public ProtocolTransport(HttpClientBuilder builder, HttpClientConnectionManager manager, ObjectMapper mapper) {
+        this.manager = requireNonNull(manager, "manager");
+        this.instrumented = new InstrumentedConnectionManager(manager);
+        this.mapper = requireNonNull(mapper, "mapper");
+        this.client =
+            builder
+            .setConnectionManager(instrumented)
+            .addExecInterceptorFirst(ProtocolInvocationHandler.class.getName(),
+                                     ProtocolInvocationHandler.EXEC_INTERCEPTOR)
+            .addRequestInterceptorLast(REQUEST_INTERCEPTOR)
+            .addRequestInterceptorLast(ProtocolCall.REQUEST_INTERCEPTOR)
+            .addResponseInterceptorFirst(ProtocolCall.RESPONSE_INTERCEPTOR)
+            .addResponseInterceptorLast(RESPONSE_INTERCEPTOR)
+            .build();
+    }
+
+    /**
+     * @return  The shared {@link CloseableHttpClient}
+     */
+    public CloseableHttpClient client() { return client; }
+
+    /**
+     * @return  The shared {@link HttpClientConnectionManager}
+     */
+    public HttpClientConnectionManager manager() { return manager; }
+
+    /**
+     * @return  The shared {@link InstrumentedConnectionManager} (and its
+     *          {@link LeaseGate}).
+     */
+    InstrumentedConnectionManager instrumented() { return instrumented; }
+
+    /**
+     * @return  The shared {@link ObjectMapper}.
+     */
+    public ObjectMapper getObjectMapper() { return mapper; }
+
+    /**
+     * Method to get the shared {@link ObjectMapper} for a
+     * {@link JacksonDataFormat}.  See
+     * {@link ProtocolClient#getObjectMapper(JacksonDataFormat)}.
+     *
+     * @param   format          The {@link JacksonDataFormat}.
+     *
+     * @return  The shared {@link ObjectMapper}.
+     */
+    public ObjectMapper getObjectMapper(JacksonDataFormat format) {
+        ObjectMapper om = null;
+
+        switch (format) {
+        case JSON:
+            om = getObjectMapper();
+            break;
+
+        default:
+            om = mappers.computeIfAbsent(format, k -> getObjectMapper().copyWith(k.newJsonFactory()));
+            break;
+        }
+
+        return om;
+    }
+
+    /**
+     * Method to close the shared {@link CloseableHttpClient} (and
+     * connection pool).  Every view becomes unusable.
+     *
+     * @throws  IOException     If an I/O exception occurs.
+     */
+    @Override
+    public void close() throws IOException { client.close(); }
+
+    private static ProtocolClient<?> client(HttpContext context) {
+        Object object = (context != null) ? context.getAttribute(CLIENT) : null;
+
+        return (object instanceof ProtocolClient) ? (ProtocolClient<?>) object : null;
+    }
+
+    private static final HttpRequestInterceptor REQUEST_INTERCEPTOR =
+        (request, details, context) -> {
+            ProtocolClient<?> client = client(context);
+
+            if (client != null) {
+                client.process(request, details, context);
+            }
+        };
+
+    private static final HttpResponseInterceptor RESPONSE_INTERCEPTOR =
+        (response, details, context) -> {
+            ProtocolClient<?> client = client(context);
+
+            if (client != null) {
+                client.process(response, details, context);
+            }
+        };
+}
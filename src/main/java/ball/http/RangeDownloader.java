@@ -0,0 +1,314 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.http.annotation.RangeDownload;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import lombok.ToString;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.protocol.BasicHttpContext;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link RangeDownload} implementation: probes the resource with a
+ * {@code HEAD} request and, if the server supports byte ranges, fetches
+ * the segments in parallel (see {@link ProtocolExecutors#executor()})
+ * directly into a pre-sized memory-mapped temporary file.  Every request
+ * asks for the {@code identity} content encoding so lengths and ranges
+ * apply to the resource itself.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString
+class RangeDownloader {
+    private static final String BYTES = "bytes";
+    private static final String IDENTITY = "identity";
+    private static final long WINDOW = 1L << 30;
+
+    private final ProtocolClient<?> client;
+    private final RangeDownload annotation;
+    private final HttpContext context;
+
+    /**
+     * Sole constructor.
+     *
+     * @param   client          The {@link ProtocolClient}.
+     * @param   annotation      The {@link RangeDownload}
+     *                          {@link java.lang.annotation.Annotation}.
+     * @param   context         The call's {@link HttpContext} (see
+     *                          {@link ProtocolClient#context()}).
+     */
+    public RangeDownloader(ProtocolClient<?> client, RangeDownload annotation, HttpContext context) {
+        this.client = requireNonNull(client, "client");
+        this.annotation = requireNonNull(annotation, "annotation");
+        this.context = requireNonNull(context, "context");
+    }
+
+    /**
+     * Static method to determine if a protocol method return type is
+     * supported.
+     *
+     * @param   type            The return type.
+     *
+     * @return  {@code true} if supported; {@code false} otherwise.
+     */
+    public static boolean isSupported(Class<?> type) {
+        return type == Path.class || type == InputStream.class || type == byte[].class;
+    }
+
+    /**
+     * Method to download the resource.
+     *
+     * @param   request         The (GET) {@link ClassicHttpRequest}.
+     * @param   type            The return type (see
+     *                          {@link #isSupported(Class)}).
+     *
+     * @return  The downloaded resource as {@code type}.
+     *
+     * @throws  Exception       If the download fails.
+     */
+    public Object download(ClassicHttpRequest request, Class<?> type) throws Exception {
+        Path path = Files.createTempFile("ball-http-", ".download");
+        Object result = null;
+
+        try {
+            Probe probe = "GET".equalsIgnoreCase(request.getMethod()) ? probe(request) : null;
+            long segment = (probe != null) ? segment(probe.length) : -1;
+
+            if (segment > 0) {
+                download(request, probe, segment, path);
+            } else {
+                request.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY);
+
+                client.client().execute(request, context, response -> {
+                        check(response, HttpStatus.SC_SUCCESS);
+
+                        HttpEntity entity = response.getEntity();
+
+                        if (entity != null) {
+                            try (InputStream in = entity.getContent()) {
+                                Files.copy(in, path, REPLACE_EXISTING);
+                            }
+                        }
+
+                        return null;
+                    });
+            }
+
+            if (type == Path.class) {
+                result = path;
+            } else if (type == InputStream.class) {
+                result = Files.newInputStream(path, DELETE_ON_CLOSE);
+            } else {
+                result = Files.readAllBytes(path);
+            }
+        } finally {
+            if (type == byte[].class || result == null) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        return result;
+    }
+
+    private Probe probe(ClassicHttpRequest request) throws Exception {
+        HttpHead head = new HttpHead(request.getUri());
+
+        copyHeaders(request, head);
+
+        return client.client().execute(head, context(), response -> {
+                Probe probe = null;
+                Header ranges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+                Header length = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+
+                if (response.getCode() == HttpStatus.SC_OK
+                    && ranges != null && BYTES.equalsIgnoreCase(ranges.getValue().trim())
+                    && length != null) {
+                    Header validator = response.getFirstHeader(HttpHeaders.ETAG);
+
+                    if (validator == null || validator.getValue().startsWith("W/")) {
+                        validator = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+                    }
+
+                    try {
+                        probe =
+                            new Probe(Long.parseLong(length.getValue().trim()),
+                                      (validator != null) ? validator.getValue() : null);
+                    } catch (NumberFormatException exception) {
+                    }
+                }
+
+                return probe;
+            });
+    }
+
+    private long segment(long length) {
+        long segment = -1;
+        long minimum = Math.max(annotation.minimumSegmentSize(), 1);
+        int count = (int) Math.min(Math.max(annotation.segments(), 1), length / minimum);
+
+        if (count > 1) {
+            segment = (length + count - 1) / count;
+        }
+
+        return segment;
+    }
+
+    private void download(ClassicHttpRequest request, Probe probe, long segment, Path path) throws Exception {
+        URI uri = request.getUri();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(probe.length);
+
+            FileChannel channel = file.getChannel();
+
+            try {
+                for (long start = 0; start < probe.length; start += segment) {
+                    long first = start;
+                    long last = Math.min(start + segment, probe.length) - 1;
+                    HttpGet get = new HttpGet(uri);
+
+                    copyHeaders(request, get);
+                    get.setHeader(HttpHeaders.RANGE, BYTES + "=" + first + "-" + last);
+
+                    if (probe.validator != null) {
+                        get.setHeader(HttpHeaders.IF_RANGE, probe.validator);
+                    }
+
+                    futures.add(ProtocolExecutors.executor()
+                                .submit(() -> client.client().execute(get, context(), response -> {
+                                        check(response, HttpStatus.SC_PARTIAL_CONTENT);
+                                        transfer(response.getEntity(), channel, first, last - first + 1);
+
+                                        return null;
+                                    })));
+                }
+
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+
+                throw (cause instanceof Exception) ? (Exception) cause : exception;
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException(exception.getMessage());
+            } finally {
+                futures.forEach(t -> t.cancel(true));
+            }
+        }
+    }
+
+    private void transfer(HttpEntity entity, FileChannel channel, long position, long length) throws IOException {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(64 << 10);
+
+        try (InputStream in = (entity != null) ? entity.getContent() : null) {
+            long offset = 0;
+
+            while (offset < length) {
+                long window = Math.min(WINDOW, length - offset);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position + offset, window);
+
+                while (mapped.hasRemaining()) {
+                    int count = (in != null) ? in.read(buffer, 0, Math.min(buffer.length, mapped.remaining())) : -1;
+
+                    if (count < 0) {
+                        throw new IOException("Premature end of range at " + (position + offset + mapped.position()));
+                    }
+
+                    mapped.put(buffer, 0, count);
+                }
+
+                offset += window;
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private HttpCoreContext context() {
+        return HttpCoreContext.adapt(new BasicHttpContext(context));
+    }
+
+    /*
+     * Probe and range requests ask for the identity encoding: a
+     * compressed Content-Length and byte ranges cut from a compressed
+     * stream do not describe the decoded resource.
+     */
+    private void copyHeaders(ClassicHttpRequest from, ClassicHttpRequest to) {
+        for (Header header : from.getHeaders()) {
+            if (! (header.getName().equalsIgnoreCase(HttpHeaders.RANGE)
+                   || header.getName().equalsIgnoreCase(HttpHeaders.IF_RANGE)
+                   || header.getName().equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING))) {
+                to.addHeader(header);
+            }
+        }
+
+        to.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY);
+    }
+
+    private static void check(ClassicHttpResponse response, int expected) throws HttpResponseException {
+        int code = response.getCode();
+        boolean ok = (expected == HttpStatus.SC_SUCCESS) ? (code >= 200 && code < 300) : (code == expected);
+
+        if (! ok) {
+            throw new HttpResponseException(code, response.getReasonPhrase());
+        }
+    }
+
+    @ToString
+    private static class Probe {
+        public final long length;
+        public final String validator;
+
+        public Probe(long length, String validator) {
+            this.length = length;
+            this.validator = validator;
+        }
+    }
+}
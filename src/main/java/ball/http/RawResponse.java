@@ -0,0 +1,181 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import lombok.ToString;
+import org.apache.hc.client5.http.ClientProtocolException;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Protocol method return type that defers de-serialization.  A protocol
+ * method declared to return {@code RawResponse<T>} receives the status,
+ * headers, and body bytes of the response; the body is de-serialized to
+ * {@code T} (with the same {@link ProtocolResponseHandler} rules as a
+ * method returning {@code T}) only on the first call to {@link #get()}
+ * and the result is cached.  Callers that only check the status or
+ * forward the body (see {@link #getEntity()} and
+ * {@link #writeTo(OutputStream)}) never pay for de-serialization.
+ *
+ * @param       <T>             The de-serialized body type.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "code", "reasonPhrase", "contentType" })
+public class RawResponse<T> {
+    private static final Object UNDECODED = new Object();
+
+    private final int code;
+    private final String reasonPhrase;
+    private final Header[] headers;
+    private final ContentType contentType;
+    private final byte[] body;
+    private final ProtocolResponseHandler handler;
+    private volatile Object value = UNDECODED;
+
+    /**
+     * Sole constructor.  Consumes the response entity.
+     *
+     * @param   response        The {@link ClassicHttpResponse}.
+     * @param   handler         The {@link ProtocolResponseHandler} to
+     *                          de-serialize the body.
+     *
+     * @throws  IOException     If the response entity cannot be read.
+     */
+    protected RawResponse(ClassicHttpResponse response, ProtocolResponseHandler handler) throws IOException {
+        HttpEntity entity = response.getEntity();
+
+        this.code = response.getCode();
+        this.reasonPhrase = response.getReasonPhrase();
+        this.headers = response.getHeaders();
+        this.contentType = (entity != null) ? ContentType.parseLenient(entity.getContentType()) : null;
+        this.body = (entity != null) ? toByteArray(entity) : null;
+        this.handler = requireNonNull(handler, "handler");
+    }
+
+    private static byte[] toByteArray(HttpEntity entity) throws IOException {
+        try (InputStream in = entity.getContent();
+             PooledByteArrayOutputStream out = new PooledByteArrayOutputStream()) {
+            return (in != null) ? out.readFrom(in).toByteArray() : null;
+        }
+    }
+
+    /**
+     * @return  The response status code.
+     */
+    public int getCode() { return code; }
+
+    /**
+     * @return  The response reason phrase.
+     */
+    public String getReasonPhrase() { return reasonPhrase; }
+
+    /**
+     * @return  The response {@link Header}s.
+     */
+    public Header[] getHeaders() { return headers.clone(); }
+
+    /**
+     * Method to get the first {@link Header} with the specified name.
+     *
+     * @param   name            The {@link Header} name.
+     *
+     * @return  The {@link Header} if present; {@code null} otherwise.
+     */
+    public Header getFirstHeader(String name) {
+        Header header = null;
+
+        for (Header candidate : headers) {
+            if (candidate.getName().equalsIgnoreCase(name)) {
+                header = candidate;
+                break;
+            }
+        }
+
+        return header;
+    }
+
+    /**
+     * @return  The body {@link ContentType} ({@code null} if the response
+     *          had no entity).
+     */
+    public ContentType getContentType() { return contentType; }
+
+    /**
+     * @return  The body bytes ({@code null} if the response had no
+     *          entity).  The array is not copied and must not be
+     *          modified.
+     */
+    public byte[] getBody() { return body; }
+
+    /**
+     * @return  The body as a (repeatable) {@link HttpEntity} suitable for
+     *          forwarding ({@code null} if the response had no entity).
+     */
+    public HttpEntity getEntity() {
+        return (body != null) ? new ByteArrayEntity(body, contentType) : null;
+    }
+
+    /**
+     * Method to write the body bytes to an {@link OutputStream}.
+     *
+     * @param   out             The {@link OutputStream}.
+     *
+     * @throws  IOException     If the body cannot be written.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (body != null) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Method to get the de-serialized body.  The body is de-serialized on
+     * the first call and the result is cached.
+     *
+     * @return  The de-serialized body.
+     *
+     * @throws  IOException     If the body cannot be de-serialized.
+     */
+    @SuppressWarnings({ "unchecked" })
+    public T get() throws IOException {
+        Object object = value;
+
+        if (object == UNDECODED) {
+            try {
+                object = handler.handleEntity(getEntity());
+            } catch (HttpException exception) {
+                throw new ClientProtocolException(exception);
+            }
+
+            value = object;
+        }
+
+        return (T) object;
+    }
+}
@@ -0,0 +1,76 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * {@link Thread} creation for {@link ProtocolExecutors}.  This
+ * implementation creates daemon platform {@link Thread}s; the Java 21
+ * layer of the multi-release JAR replaces this class with one that
+ * creates virtual {@link Thread}s.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class Threads {
+    private static final AtomicInteger COUNT = new AtomicInteger(0);
+
+    /**
+     * See {@link ProtocolExecutors#isVirtual()}.
+     *
+     * @return  {@code false}
+     */
+    static boolean isVirtual() { return false; }
+
+    /**
+     * Method to get a {@link ThreadFactory}.
+     *
+     * @param   prefix          The {@link Thread} name prefix.
+     *
+     * @return  A {@link ThreadFactory} for daemon platform
+     *          {@link Thread}s.
+     */
+    static ThreadFactory factory(String prefix) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + COUNT.getAndIncrement());
+
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+    /**
+     * Method to create a new {@link ExecutorService}.
+     *
+     * @param   factory         The {@link ThreadFactory}.
+     *
+     * @return  A cached {@link Thread} pool {@link ExecutorService}.
+     */
+    static ExecutorService newExecutorService(ThreadFactory factory) {
+        return Executors.newCachedThreadPool(factory);
+    }
+}
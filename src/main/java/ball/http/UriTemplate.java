@@ -0,0 +1,414 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.ToString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Precompiled {@link javax.ws.rs.Path}-style URI template.  Templates are
+ * parsed once (see {@link #compile(String)}) and expanded with path,
+ * matrix, and query parameters in a single {@link StringBuilder} pass
+ * (see {@link #expand(Map,Map,Map,URI)}).  Template variables are of the
+ * form <code>{name}</code> or <code>{name: regex}</code> (the regular
+ * expression is ignored).
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@ToString(of = { "template" })
+public final class UriTemplate {
+    private static final ConcurrentHashMap<String,UriTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String UNRESERVED =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~";
+    private static final boolean[] LITERAL = allowed(UNRESERVED + ":/?#[]@!$&'()*+,;=%");
+    private static final boolean[] SEGMENT = allowed(UNRESERVED + "!$&'()*+,;=:@");
+    private static final boolean[] MATRIX = allowed(UNRESERVED + "!$&'()*+,:@");
+    private static final boolean[] QUERY = allowed(UNRESERVED + "!$'()*,;:@/?");
+
+    private static boolean[] allowed(String characters) {
+        boolean[] allowed = new boolean[128];
+
+        for (char character : characters.toCharArray()) {
+            allowed[character] = true;
+        }
+
+        return allowed;
+    }
+
+    private final String template;
+    private final String scheme;
+    private final Part authority;
+    private final Part path;
+    private final Part query;
+    private final Part fragment;
+    private final List<String> names;
+
+    private UriTemplate(String template) {
+        this.template = requireNonNull(template, "template");
+
+        int end = template.length();
+        int colon = indexOf(template, ':', 0, end);
+        int slash = indexOf(template, '/', 0, end);
+        int start = 0;
+
+        if (colon > 0 && (slash < 0 || colon < slash) && template.startsWith("//", colon + 1)) {
+            start = colon + 1;
+        }
+
+        this.scheme = (start > 0) ? template.substring(0, start) : null;
+
+        if (template.startsWith("//", start)) {
+            int authority = start;
+
+            start = indexOf(template, '/', start + 2, end);
+            start = (start < 0) ? end : start;
+
+            this.authority = new Part(template, authority, start, SEGMENT);
+        } else {
+            this.authority = null;
+        }
+
+        int hash = indexOf(template, '#', start, end);
+        int question = indexOf(template, '?', start, (hash < 0) ? end : hash);
+
+        this.path = new Part(template, start, (question >= 0) ? question : (hash >= 0) ? hash : end, SEGMENT);
+        this.query =
+            (question >= 0) ? new Part(template, question + 1, (hash >= 0) ? hash : end, QUERY) : null;
+        this.fragment = (hash >= 0) ? new Part(template, hash + 1, end, QUERY) : null;
+
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+
+        for (Part part : Arrays.asList(authority, path, query, fragment)) {
+            if (part != null) {
+                names.addAll(Arrays.asList(part.names));
+            }
+        }
+
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * Static method to get the compiled {@link UriTemplate} for a
+     * template {@link String}.  Compiled templates are cached.
+     *
+     * @param   template        The template {@link String}.
+     *
+     * @return  The {@link UriTemplate}.
+     *
+     * @throws  IllegalArgumentException
+     *                          If the template is malformed.
+     */
+    public static UriTemplate compile(String template) {
+        return CACHE.computeIfAbsent(template, UriTemplate::new);
+    }
+
+    /**
+     * Static method to append a path to a template {@link String}
+     * (ensuring exactly one {@code '/'} between the two).
+     *
+     * @param   template        The template {@link String}.
+     * @param   path            The path to append.
+     *
+     * @return  The combined template {@link String}.
+     */
+    public static String append(String template, String path) {
+        String string = null;
+
+        if (template == null || template.isEmpty()) {
+            string = path;
+        } else if (path == null || path.isEmpty()) {
+            string = template;
+        } else if (template.endsWith("/")) {
+            string = template + (path.startsWith("/") ? path.substring(1) : path);
+        } else {
+            string = template + (path.startsWith("/") ? path : ("/" + path));
+        }
+
+        return string;
+    }
+
+    /**
+     * @return  The template {@link String}.
+     */
+    public String getTemplate() { return template; }
+
+    /**
+     * @return  The template variable names (in order of first
+     *          appearance).
+     */
+    public List<String> getNames() { return names; }
+
+    /**
+     * Method to get the origin ({@code scheme://authority}) of
+     * {@link.this} template.
+     *
+     * @return  The origin {@link URI} if the template specifies a scheme
+     *          and an authority with no template variables; {@code null}
+     *          otherwise.
+     */
+    public URI getOrigin() {
+        URI origin = null;
+
+        if (scheme != null && authority != null && authority.names.length == 0) {
+            origin = URI.create(scheme + authority.literals[0]);
+        }
+
+        return origin;
+    }
+
+    /**
+     * Method to expand {@link.this} template.
+     *
+     * @param   values          The template variable values.
+     * @param   matrix          The matrix parameters appended to the
+     *                          last path segment (may be {@code null}).
+     * @param   parameters      The query parameters (may be
+     *                          {@code null}).
+     * @param   base            A {@link URI} whose (non-empty) components
+     *                          replace the corresponding template
+     *                          components (may be {@code null}).
+     *
+     * @return  The expanded {@link URI}.
+     *
+     * @throws  IllegalArgumentException
+     *                          If a template variable has no value or the
+     *                          result is not a valid {@link URI}.
+     */
+    public URI expand(Map<String,?> values, Map<String,?> matrix, Map<String,?> parameters, URI base) {
+        StringBuilder buffer = new StringBuilder(template.length() + 64);
+        boolean hasAuthority = true;
+
+        if (base != null && base.getScheme() != null) {
+            buffer.append(base.getScheme()).append(':');
+        } else if (scheme != null) {
+            buffer.append(scheme);
+        }
+
+        if (base != null && base.getRawAuthority() != null) {
+            buffer.append("//").append(base.getRawAuthority());
+        } else if (authority != null) {
+            authority.expand(buffer, values);
+        } else {
+            hasAuthority = false;
+        }
+
+        int mark = buffer.length();
+
+        if (base != null && base.getRawPath() != null && (! base.getRawPath().isEmpty())) {
+            buffer.append(base.getRawPath());
+        } else {
+            path.expand(buffer, values);
+        }
+
+        if (hasAuthority && buffer.length() > mark && buffer.charAt(mark) != '/') {
+            buffer.insert(mark, '/');
+        }
+
+        if (matrix != null) {
+            for (Map.Entry<String,?> entry : matrix.entrySet()) {
+                for (Object value : iterable(entry.getValue())) {
+                    buffer.append(';');
+                    encode(buffer, entry.getKey(), MATRIX);
+                    buffer.append('=');
+                    encode(buffer, String.valueOf(value), MATRIX);
+                }
+            }
+        }
+
+        char separator = '?';
+
+        if (base != null && base.getRawQuery() != null) {
+            buffer.append(separator).append(base.getRawQuery());
+            separator = '&';
+        } else if (query != null) {
+            buffer.append(separator);
+            query.expand(buffer, values);
+            separator = '&';
+        }
+
+        if (parameters != null) {
+            for (Map.Entry<String,?> entry : parameters.entrySet()) {
+                for (Object value : iterable(entry.getValue())) {
+                    buffer.append(separator);
+                    encode(buffer, entry.getKey(), QUERY);
+                    buffer.append('=');
+                    encode(buffer, String.valueOf(value), QUERY);
+                    separator = '&';
+                }
+            }
+        }
+
+        if (base != null && base.getRawFragment() != null) {
+            buffer.append('#').append(base.getRawFragment());
+        } else if (fragment != null) {
+            buffer.append('#');
+            fragment.expand(buffer, values);
+        }
+
+        return URI.create(buffer.toString());
+    }
+
+    private static Iterable<?> iterable(Object value) {
+        Iterable<?> iterable = null;
+
+        if (value instanceof Iterable<?>) {
+            iterable = (Iterable<?>) value;
+        } else if (value instanceof Object[]) {
+            iterable = Arrays.asList((Object[]) value);
+        } else if (value != null) {
+            iterable = Collections.singleton(value);
+        } else {
+            iterable = Collections.emptySet();
+        }
+
+        return iterable;
+    }
+
+    private static int indexOf(String string, char character, int start, int end) {
+        int depth = 0;
+
+        for (int i = start; i < end; i += 1) {
+            char current = string.charAt(i);
+
+            if (current == '{') {
+                depth += 1;
+            } else if (current == '}') {
+                depth -= 1;
+            } else if (current == character && depth == 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void encode(StringBuilder buffer, CharSequence sequence, boolean[] allowed) {
+        int length = sequence.length();
+
+        for (int i = 0; i < length; i += 1) {
+            char character = sequence.charAt(i);
+
+            if (character < 128 && allowed[character]) {
+                buffer.append(character);
+            } else {
+                int end = i + 1;
+
+                if (Character.isHighSurrogate(character) && end < length) {
+                    end += 1;
+                }
+
+                for (byte octet : sequence.subSequence(i, end).toString().getBytes(UTF_8)) {
+                    buffer.append('%').append(HEX[(octet >> 4) & 0x0F]).append(HEX[octet & 0x0F]);
+                }
+
+                i = end - 1;
+            }
+        }
+    }
+
+    /**
+     * A component of the template: literal text (pre-encoded) interleaved
+     * with variable names.
+     */
+    private static class Part {
+        private final String[] literals;
+        private final String[] names;
+        private final boolean[] allowed;
+
+        public Part(String template, int start, int end, boolean[] allowed) {
+            List<String> literals = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int mark = start;
+            int i = start;
+
+            while (i < end) {
+                char character = template.charAt(i);
+
+                if (character == '{') {
+                    int close = i + 1;
+                    int depth = 1;
+
+                    while (close < end && depth > 0) {
+                        char current = template.charAt(close);
+
+                        depth += (current == '{') ? 1 : (current == '}') ? -1 : 0;
+                        close += 1;
+                    }
+
+                    if (depth > 0) {
+                        throw new IllegalArgumentException("Unterminated template variable: " + template);
+                    }
+
+                    String name = template.substring(i + 1, close - 1);
+                    int colon = name.indexOf(':');
+
+                    name = ((colon < 0) ? name : name.substring(0, colon)).trim();
+
+                    if (name.isEmpty()) {
+                        throw new IllegalArgumentException("Empty template variable: " + template);
+                    }
+
+                    encode(literal, template.substring(mark, i), LITERAL);
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    names.add(name);
+                    i = close;
+                    mark = close;
+                } else {
+                    i += 1;
+                }
+            }
+
+            encode(literal, template.substring(mark, end), LITERAL);
+            literals.add(literal.toString());
+
+            this.literals = literals.toArray(new String[] { });
+            this.names = names.toArray(new String[] { });
+            this.allowed = allowed;
+        }
+
+        public void expand(StringBuilder buffer, Map<String,?> values) {
+            for (int i = 0; i < names.length; i += 1) {
+                Object value = (values != null) ? values.get(names[i]) : null;
+
+                if (value == null) {
+                    throw new IllegalArgumentException("The template variable '" + names[i] + "' has no value");
+                }
+
+                buffer.append(literals[i]);
+                encode(buffer, String.valueOf(value), allowed);
+            }
+
+            buffer.append(literals[names.length]);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ball.http.annotation;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Protocol method {@link java.lang.annotation.Annotation} to iterate a
+ * paginated collection.  Applies to {@link javax.ws.rs.GET} methods
+ * returning {@link java.util.stream.Stream Stream<T>} or
+ * {@link java.util.Iterator Iterator<T>} of JSON (or other Jackson format)
+ * pages: the method call sends no request; pages are fetched as the
+ * elements are consumed with up to {@link #prefetch()} pages fetched
+ * ahead of the consumer.  The elements are the page's {@link #items()}
+ * de-serialized as {@code T}.  The next page request is determined by
+ * the {@link #value() Scheme}.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({ METHOD })
+public @interface Paginated {
+
+    /**
+     * The pagination {@link Scheme}.
+     *
+     * @return  The {@link Scheme}.
+     */
+    Scheme value() default Scheme.LINK;
+
+    /**
+     * The JSON Pointer (RFC 6901) of the items array within each page
+     * ({@code ""} if the page is the array).
+     *
+     * @return  The items JSON Pointer.
+     */
+    String items() default "";
+
+    /**
+     * The JSON Pointer of the next page cursor within each page
+     * ({@link Scheme#CURSOR} only).  Iteration ends when the cursor is
+     * missing, {@code null}, or empty.
+     *
+     * @return  The cursor JSON Pointer.
+     */
+    String cursor() default "/next";
+
+    /**
+     * The query parameter set to the cursor ({@link Scheme#CURSOR}) or
+     * the offset ({@link Scheme#OFFSET}) in the next page request.
+     * Defaults to {@code cursor} or {@code offset}, respectively.
+     *
+     * @return  The query parameter name.
+     */
+    String parameter() default "";
+
+    /**
+     * The number of pages to fetch ahead of the consumer ({@code 0} to
+     * fetch each page on demand on the consuming thread).
+     *
+     * @return  The prefetch depth.
+     */
+    int prefetch() default 1;
+
+    /**
+     * Pagination schemes.
+     */
+    enum Scheme {
+        /**
+         * The next page is the {@code Link} header URI with
+         * {@code rel="next"} (RFC 8288).
+         */
+        LINK,
+        /**
+         * The next page request sets {@link #parameter()} to the
+         * {@link #cursor()} value of the previous page.
+         */
+        CURSOR,
+        /**
+         * The next page request sets {@link #parameter()} to the
+         * previous offset plus the number of items in the previous page
+         * (the initial offset is that of the first request or
+         * {@code 0}).  Iteration ends with an empty page.
+         */
+        OFFSET;
+    }
+}
@@ -0,0 +1,71 @@
+package ball.http.annotation;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Protocol interface and method {@link java.lang.annotation.Annotation}
+ * to specify the connection lease priority of calls.  When a route's
+ * connections are all leased, waiting calls are served in priority order
+ * (highest first; FIFO within a priority).  A method annotation
+ * overrides the interface annotation; {@link ball.http.LeasePriority}
+ * overrides both for individual calls.  See
+ * {@link ball.http.ProtocolClient#reserveConnections(int,int)}.
+ * Priorities are enforced only by a {@link ball.http.ProtocolClient}
+ * that knows its connection pool (a {@link ball.http.ProtocolTransport}
+ * view or a client constructed with its
+ * {@link org.apache.hc.client5.http.io.HttpClientConnectionManager});
+ * otherwise they are ignored and a warning is logged.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({ TYPE, METHOD })
+public @interface Priority {
+
+    /**
+     * Priority for interactive (latency-sensitive) calls.
+     */
+    int HIGH = 10;
+
+    /**
+     * Default priority.
+     */
+    int NORMAL = 0;
+
+    /**
+     * Priority for bulk (batch) calls.
+     */
+    int LOW = -10;
+
+    /**
+     * The priority (higher values are served first).
+     *
+     * @return  The priority.
+     */
+    int value();
+}
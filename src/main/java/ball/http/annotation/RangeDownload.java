@@ -0,0 +1,57 @@
+package ball.http.annotation;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Protocol method {@link java.lang.annotation.Annotation} to download
+ * large resources in parallel byte-range segments.  Applies to
+ * {@link javax.ws.rs.GET} methods returning {@link java.nio.file.Path},
+ * {@link java.io.InputStream}, or {@code byte[]}.  If the server does not
+ * advertise {@code Accept-Ranges: bytes} and a {@code Content-Length}
+ * (through a {@code HEAD} request), or the resource is smaller than two
+ * segments, the resource is downloaded in a single stream.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({ METHOD })
+public @interface RangeDownload {
+
+    /**
+     * The maximum number of concurrent segments (connections).
+     *
+     * @return  The maximum number of segments.
+     */
+    int segments() default 4;
+
+    /**
+     * The minimum segment size (in bytes).
+     *
+     * @return  The minimum segment size.
+     */
+    long minimumSegmentSize() default 8L << 20;
+}
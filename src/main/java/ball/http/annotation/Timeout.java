@@ -0,0 +1,66 @@
+package ball.http.annotation;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Protocol interface and method {@link java.lang.annotation.Annotation}
+ * to specify call timeouts (in milliseconds).  Each element specified
+ * on the method overrides the same element specified on the interface;
+ * negative values are "unspecified."  {@link #connect()} and
+ * {@link #response()} are applied to the request's
+ * {@link org.apache.hc.client5.http.config.RequestConfig}.
+ * {@link #total()} bounds the whole call (including nested protocol
+ * calls made while it is in progress) as a {@link ball.http.Deadline}.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({ TYPE, METHOD })
+public @interface Timeout {
+
+    /**
+     * The connect timeout (in milliseconds).
+     *
+     * @return  The connect timeout.
+     */
+    long connect() default -1;
+
+    /**
+     * The response (socket) timeout (in milliseconds).
+     *
+     * @return  The response timeout.
+     */
+    long response() default -1;
+
+    /**
+     * The total call timeout (in milliseconds).
+     *
+     * @return  The total timeout.
+     */
+    long total() default -1;
+}
@@ -22,12 +22,48 @@ import ball.annotation.ServiceProviderFor;
 import ball.annotation.processing.AnnotatedProcessor;
 import ball.annotation.processing.For;
 import ball.http.annotation.Protocol;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static javax.tools.StandardLocation.CLASS_OUTPUT;
+
 /**
- * {@link Protocol} annotation {@link Processor}.
+ * {@link Protocol} annotation {@link Processor}.  In addition to the
+ * {@link Protocol} target checks, writes GraalVM {@code native-image}
+ * reflection, dynamic proxy, and resource configuration for each
+ * {@link Protocol} interface to
+ * {@code META-INF/native-image/ball-http/<interface>/}.  The
+ * configuration covers the {@link java.lang.reflect.Proxy} interface,
+ * the interface's methods, the (non-JDK) types reachable from its method
+ * return and parameter types, the
+ * {@link ball.http.ProtocolRequestBuilder} hook methods, and the
+ * {@link ball.http.ProtocolResponseHandler} codec methods.
  *
  * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
  */
@@ -35,4 +71,229 @@ import lombok.ToString;
 @For({ Protocol.class })
 @NoArgsConstructor @ToString
 public class ProtocolProcessor extends AnnotatedProcessor {
+    private static final String NATIVE_IMAGE = "META-INF/native-image/ball-http/";
+    private static final String[] HANDLERS = {
+        "ball.http.ProtocolRequestBuilder", "ball.http.ProtocolResponseHandler"
+    };
+
+    @Override
+    public void process(RoundEnvironment roundEnv, TypeElement annotation, Element element) {
+        super.process(roundEnv, annotation, element);
+
+        switch (element.getKind()) {
+        case INTERFACE:
+            try {
+                writeNativeImageConfiguration((TypeElement) element);
+            } catch (IOException exception) {
+                print(WARNING, element, "Could not write native-image configuration: %s", exception);
+            }
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    private void writeNativeImageConfiguration(TypeElement type) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        String name = elements.getBinaryName(type).toString();
+        Set<TypeElement> types = new LinkedHashSet<>();
+
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (method.getEnclosingElement().getKind().isInterface()
+                && (! method.getModifiers().contains(Modifier.STATIC))) {
+                addReachableTypes(types, method.getReturnType());
+
+                for (VariableElement parameter : method.getParameters()) {
+                    addReachableTypes(types, parameter.asType());
+                }
+            }
+        }
+
+        types.remove(type);
+        /*
+         * reflect-config.json
+         */
+        List<Map<String,Object>> reflect = new ArrayList<>();
+
+        reflect.add(reflect(name, "allDeclaredMethods", "allPublicMethods"));
+
+        for (String handler : HANDLERS) {
+            reflect.add(reflect(handler, "allDeclaredMethods", "allPublicMethods"));
+        }
+
+        for (TypeElement element : types) {
+            reflect.add(reflect(elements.getBinaryName(element).toString(),
+                                "allDeclaredConstructors", "allPublicConstructors",
+                                "allDeclaredMethods", "allPublicMethods",
+                                "allDeclaredFields", "allPublicFields"));
+        }
+        /*
+         * proxy-config.json
+         */
+        Map<String,Object> proxy = new LinkedHashMap<>();
+
+        proxy.put("interfaces", new String[] { name });
+        /*
+         * resource-config.json: JAXB provider and binding resources
+         */
+        Set<String> patterns = new LinkedHashSet<>();
+
+        patterns.add("\\QMETA-INF/services/javax.xml.bind.JAXBContext\\E");
+
+        for (TypeElement element : types) {
+            PackageElement pkg = elements.getPackageOf(element);
+
+            if (! pkg.isUnnamed()) {
+                String path = pkg.getQualifiedName().toString().replace('.', '/');
+
+                patterns.add("\\Q" + path + "/jaxb.properties\\E");
+                patterns.add("\\Q" + path + "/jaxb.index\\E");
+            }
+        }
+
+        List<Map<String,Object>> includes = new ArrayList<>();
+
+        for (String pattern : patterns) {
+            Map<String,Object> include = new LinkedHashMap<>();
+
+            include.put("pattern", pattern);
+            includes.add(include);
+        }
+
+        Map<String,Object> included = new LinkedHashMap<>();
+        Map<String,Object> resources = new LinkedHashMap<>();
+
+        included.put("includes", includes);
+        resources.put("resources", included);
+
+        write(type, NATIVE_IMAGE + name + "/reflect-config.json", reflect);
+        write(type, NATIVE_IMAGE + name + "/proxy-config.json", new Object[] { proxy });
+        write(type, NATIVE_IMAGE + name + "/resource-config.json", resources);
+    }
+
+    private void addReachableTypes(Set<TypeElement> set, TypeMirror mirror) {
+        switch (mirror.getKind()) {
+        case ARRAY:
+            addReachableTypes(set, ((ArrayType) mirror).getComponentType());
+            break;
+
+        case WILDCARD:
+            TypeMirror bound = ((WildcardType) mirror).getExtendsBound();
+
+            if (bound != null) {
+                addReachableTypes(set, bound);
+            }
+            break;
+
+        case DECLARED:
+            DeclaredType declared = (DeclaredType) mirror;
+            TypeElement element = (TypeElement) declared.asElement();
+
+            for (TypeMirror argument : declared.getTypeArguments()) {
+                addReachableTypes(set, argument);
+            }
+
+            if (! isJDK(element) && set.add(element)) {
+                addReachableTypes(set, element.getSuperclass());
+
+                for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+                    if (! field.getModifiers().contains(Modifier.STATIC)) {
+                        addReachableTypes(set, field.asType());
+                    }
+                }
+            }
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    private boolean isJDK(TypeElement element) {
+        String name = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+
+        return name.equals("java") || name.startsWith("java.")
+            || name.equals("javax") || name.startsWith("javax.");
+    }
+
+    private Map<String,Object> reflect(String name, String... flags) {
+        Map<String,Object> map = new LinkedHashMap<>();
+
+        map.put("name", name);
+
+        for (String flag : flags) {
+            map.put(flag, true);
+        }
+
+        return map;
+    }
+
+    private void write(TypeElement type, String path, Object value) throws IOException {
+        FileObject file = processingEnv.getFiler().createResource(CLASS_OUTPUT, "", path, type);
+
+        try (Writer writer = file.openWriter()) {
+            StringBuilder buffer = new StringBuilder();
+
+            json(buffer, value, "");
+            writer.write(buffer.append("\n").toString());
+        }
+    }
+
+    private void json(StringBuilder buffer, Object value, String indent) {
+        String next = indent + "  ";
+
+        if (value instanceof Map<?,?>) {
+            String separator = "";
+
+            buffer.append("{");
+
+            for (Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+                buffer.append(separator).append("\n").append(next);
+                json(buffer, entry.getKey(), next);
+                buffer.append(": ");
+                json(buffer, entry.getValue(), next);
+                separator = ",";
+            }
+
+            buffer.append("\n").append(indent).append("}");
+        } else if (value instanceof Collection<?> || value instanceof Object[]) {
+            Collection<?> collection =
+                (value instanceof Object[]) ? Arrays.asList((Object[]) value) : (Collection<?>) value;
+            String separator = "";
+
+            buffer.append("[");
+
+            for (Object element : collection) {
+                buffer.append(separator).append("\n").append(next);
+                json(buffer, element, next);
+                separator = ",";
+            }
+
+            buffer.append("\n").append(indent).append("]");
+        } else if (value instanceof Boolean || value instanceof Number) {
+            buffer.append(value);
+        } else {
+            buffer.append('"');
+
+            for (char character : String.valueOf(value).toCharArray()) {
+                switch (character) {
+                case '"':
+                case '\\':
+                    buffer.append('\\').append(character);
+                    break;
+
+                default:
+                    if (character < 0x20) {
+                        buffer.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        buffer.append(character);
+                    }
+                    break;
+                }
+            }
+
+            buffer.append('"');
+        }
+    }
 }
@@ -0,0 +1,340 @@
+package ball.http.ant.taskdefs;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.http.ProtocolExecutors;
+import ball.util.ant.taskdefs.AntTask;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.tools.ant.BuildException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+/**
+ * {@link.uri http://ant.apache.org/ Ant}
+ * {@link org.apache.tools.ant.Task} to execute a batch of independent
+ * requests concurrently.  Requests are specified as nested
+ * {@code <delete>}, {@code <get>}, {@code <head>}, {@code <options>},
+ * {@code <patch>}, {@code <post>}, and {@code <put>} elements (configured
+ * exactly as the corresponding {@code <http-*>} tasks) and/or by a
+ * {@code file} of JSON lines of the form
+ * <pre>{@code
+ * {"method": "POST", "uri": "https://...", "headers": {"Accept": "application/json"}, "body": "..."}
+ * }</pre>
+ * At most {@code parallelism} requests are in flight at once and, if
+ * {@code rate} is specified, requests are started at no more than
+ * {@code rate} per second.  The result of the request at index
+ * {@code i} is set in the {@code <property>.i.status},
+ * {@code <property>.i.elapsed}, {@code <property>.i.body}, and (on
+ * failure) {@code <property>.i.error} properties if {@code property} is
+ * specified and/or written as a JSON line to {@code output}.
+ *
+ * {@ant.task}
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@AntTask("http-batch")
+@NoArgsConstructor @ToString(of = { "parallelism", "rate" })
+public class HTTPBatchTask extends HTTPTask {
+    private static final String DOT = ".";
+
+    private final List<Request> requests = new ArrayList<>();
+    @Getter @Setter
+    private File file = null;
+    @Getter @Setter
+    private int parallelism = 4;
+    @Getter @Setter
+    private double rate = 0;
+    @Getter @Setter
+    private String property = null;
+    @Getter @Setter
+    private File output = null;
+    @Getter @Setter
+    private boolean failonerror = true;
+
+    public Delete createDelete() { return add(new Delete()); }
+    public Get createGet() { return add(new Get()); }
+    public Head createHead() { return add(new Head()); }
+    public Options createOptions() { return add(new Options()); }
+    public Patch createPatch() { return add(new Patch()); }
+    public Post createPost() { return add(new Post()); }
+    public Put createPut() { return add(new Put()); }
+
+    private <T extends Request> T add(T request) {
+        request.setProject(getProject());
+        request.setTaskName(getTaskName());
+        request.init();
+
+        requests.add(request);
+
+        return request;
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        super.execute();
+
+        if (parallelism < 1) {
+            throw new BuildException("parallelism must be positive");
+        }
+
+        ExecutorService executor = null;
+
+        try {
+            List<ClassicHttpRequest> list = new ArrayList<>();
+
+            for (Request request : requests) {
+                HttpUriRequest message = request.request();
+
+                request.configure(message);
+                list.add(message);
+            }
+
+            if (file != null) {
+                list.addAll(read(file));
+            }
+
+            Result[] results = new Result[list.size()];
+
+            executor = Executors.newFixedThreadPool(parallelism, ProtocolExecutors.threadFactory());
+
+            try (CloseableHttpClient client = isEmpty(getClientref()) ? build(parallelism) : null) {
+                long interval = (rate > 0) ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+                AtomicLong next = new AtomicLong(System.nanoTime());
+                List<Future<?>> futures = new ArrayList<>();
+
+                for (int i = 0; i < results.length; i += 1) {
+                    int index = i;
+                    ClassicHttpRequest request = list.get(i);
+
+                    futures.add(executor.submit(() -> {
+                        if (interval > 0) {
+                            long delay = next.getAndAdd(interval) - System.nanoTime();
+
+                            if (delay > 0) {
+                                TimeUnit.NANOSECONDS.sleep(delay);
+                            }
+                        }
+
+                        results[index] = execute(client, request);
+
+                        return null;
+                    }));
+                }
+
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+
+            report(results);
+        } catch (BuildException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            throw new BuildException(throwable);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private List<ClassicHttpRequest> read(File file) throws IOException {
+        List<ClassicHttpRequest> list = new ArrayList<>();
+        ObjectMapper mapper = new ObjectMapper();
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (! line.trim().isEmpty()) {
+                    JsonNode node = mapper.readTree(line);
+                    HttpUriRequestBase request =
+                        new HttpUriRequestBase(node.path("method").asText("GET").toUpperCase(),
+                                               URI.create(node.path("uri").asText()));
+                    Iterator<Map.Entry<String,JsonNode>> headers = node.path("headers").fields();
+
+                    while (headers.hasNext()) {
+                        Map.Entry<String,JsonNode> entry = headers.next();
+
+                        request.addHeader(entry.getKey(), entry.getValue().asText());
+                    }
+
+                    if (node.hasNonNull("body")) {
+                        request.setEntity(new StringEntity(node.get("body").asText(), UTF_8));
+                    }
+
+                    list.add(request);
+                }
+            }
+        }
+
+        return list;
+    }
+
+    private Result execute(CloseableHttpClient client, ClassicHttpRequest request) {
+        Result result = new Result(request);
+        long start = System.nanoTime();
+
+        try {
+            HttpClientResponseHandler<Result> handler =
+                response -> result.set(response,
+                                       (response.getEntity() != null)
+                                           ? EntityUtils.toString(response.getEntity(), UTF_8)
+                                           : null);
+
+            if (client != null) {
+                client.execute(request, handler);
+            } else {
+                execute(request, handler);
+            }
+        } catch (Exception exception) {
+            result.error = String.valueOf(exception);
+        } finally {
+            result.elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        return result;
+    }
+
+    private void report(Result[] results) throws IOException {
+        int failed = 0;
+
+        for (int i = 0; i < results.length; i += 1) {
+            Result result = results[i];
+
+            if (result.isFailed()) {
+                failed += 1;
+            }
+
+            log(i + ": " + result.method + " " + result.uri + " -> "
+                + ((result.error != null) ? result.error : String.valueOf(result.status))
+                + " (" + result.elapsed + " ms)");
+
+            if (! isEmpty(property)) {
+                String prefix = property + DOT + i + DOT;
+
+                getProject().setNewProperty(prefix + "status", String.valueOf(result.status));
+                getProject().setNewProperty(prefix + "elapsed", String.valueOf(result.elapsed));
+
+                if (result.body != null) {
+                    getProject().setNewProperty(prefix + "body", result.body);
+                }
+
+                if (result.error != null) {
+                    getProject().setNewProperty(prefix + "error", result.error);
+                }
+            }
+        }
+
+        if (! isEmpty(property)) {
+            getProject().setNewProperty(property + DOT + "count", String.valueOf(results.length));
+            getProject().setNewProperty(property + DOT + "failed", String.valueOf(failed));
+        }
+
+        if (output != null) {
+            ObjectMapper mapper = new ObjectMapper();
+
+            try (BufferedWriter writer = Files.newBufferedWriter(output.toPath(), UTF_8)) {
+                for (int i = 0; i < results.length; i += 1) {
+                    writer.write(mapper.writeValueAsString(results[i].asMap(i)));
+                    writer.newLine();
+                }
+            }
+        }
+
+        if (failonerror && failed > 0) {
+            throw new BuildException(failed + " of " + results.length + " requests failed");
+        }
+    }
+
+    @ToString
+    private static class Result {
+        public final String method;
+        public final String uri;
+        public int status = 0;
+        public long elapsed = 0;
+        public String body = null;
+        public String error = null;
+
+        public Result(ClassicHttpRequest request) {
+            String uri = null;
+
+            try {
+                uri = String.valueOf(request.getUri());
+            } catch (Exception exception) {
+                uri = request.getRequestUri();
+            }
+
+            this.method = request.getMethod();
+            this.uri = uri;
+        }
+
+        public Result set(ClassicHttpResponse response, String body) {
+            this.status = response.getCode();
+            this.body = body;
+
+            return this;
+        }
+
+        public boolean isFailed() { return error != null || status >= 400; }
+
+        public Map<String,Object> asMap(int index) {
+            Map<String,Object> map = new LinkedHashMap<>();
+
+            map.put("index", index);
+            map.put("method", method);
+            map.put("uri", uri);
+            map.put("status", status);
+            map.put("elapsed", elapsed);
+            map.put("body", body);
+            map.put("error", error);
+
+            return map;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package ball.http.ant.taskdefs;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.http.LatencyHistogram;
+import ball.http.ProtocolExecutors;
+import ball.util.ant.taskdefs.AntTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.tools.ant.BuildException;
+
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+/**
+ * {@link.uri http://ant.apache.org/ Ant}
+ * {@link org.apache.tools.ant.Task} to benchmark a request.  The request
+ * is specified by a single nested {@code <delete>}, {@code <get>},
+ * {@code <head>}, {@code <options>}, {@code <patch>}, {@code <post>}, or
+ * {@code <put>} element (configured exactly as the corresponding
+ * {@code <http-*>} task) and is sent {@code count} times or for
+ * {@code duration} milliseconds after {@code warmup} unrecorded requests.
+ * <p>
+ * By default, {@code concurrency} clients each send the next request as
+ * soon as the previous response is received (closed model).  If
+ * {@code rate} is specified, requests are scheduled at {@code rate} per
+ * second regardless of response times (open model) and each latency is
+ * measured from the request's scheduled start so queueing delay is not
+ * omitted; {@code concurrency} then limits the requests in flight.
+ * </p>
+ * <p>
+ * Throughput and the {@link LatencyHistogram} percentiles (in
+ * milliseconds) are logged and, if {@code property} is specified, set
+ * in the {@code <property>.count}, {@code <property>.errors},
+ * {@code <property>.throughput}, {@code <property>.mean},
+ * {@code <property>.p50}, {@code <property>.p90},
+ * {@code <property>.p99}, {@code <property>.p999}, and
+ * {@code <property>.max} properties.  The build fails if more than
+ * {@code maxerrors} requests fail (a 4xx or 5xx response or an
+ * exception), if throughput is less than {@code minthroughput}, or if
+ * any nested {@code <threshold percentile="..." max="..."/>} is
+ * exceeded.
+ * </p>
+ *
+ * {@ant.task}
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@AntTask("http-bench")
+@NoArgsConstructor @ToString(of = { "count", "duration", "concurrency", "rate" })
+public class HTTPBenchTask extends HTTPTask {
+    private static final String DOT = ".";
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private Request request = null;
+    private final List<Threshold> thresholds = new ArrayList<>();
+    @Getter @Setter
+    private long count = 0;
+    @Getter @Setter
+    private long duration = 0;
+    @Getter @Setter
+    private long warmup = 0;
+    @Getter @Setter
+    private int concurrency = 1;
+    @Getter @Setter
+    private double rate = 0;
+    @Getter @Setter
+    private String property = null;
+    @Getter @Setter
+    private long maxerrors = 0;
+    @Getter @Setter
+    private double minthroughput = 0;
+
+    public Delete createDelete() { return set(new Delete()); }
+    public Get createGet() { return set(new Get()); }
+    public Head createHead() { return set(new Head()); }
+    public Options createOptions() { return set(new Options()); }
+    public Patch createPatch() { return set(new Patch()); }
+    public Post createPost() { return set(new Post()); }
+    public Put createPut() { return set(new Put()); }
+
+    private <T extends Request> T set(T request) {
+        if (this.request != null) {
+            throw new BuildException("Only one request may be specified");
+        }
+
+        request.setProject(getProject());
+        request.setTaskName(getTaskName());
+        request.init();
+        request.setLogLevel(LogLevel.NONE.name());
+
+        this.request = request;
+
+        return request;
+    }
+
+    public void addConfiguredThreshold(Threshold threshold) {
+        thresholds.add(threshold);
+    }
+
+    @Override
+    public void init() throws BuildException {
+        super.init();
+
+        setLogLevel(LogLevel.NONE.name());
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        super.execute();
+
+        if (request == null) {
+            throw new BuildException("No request specified");
+        }
+
+        if (concurrency < 1) {
+            throw new BuildException("concurrency must be positive");
+        }
+
+        if (count <= 0 && duration <= 0) {
+            count = 100;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, ProtocolExecutors.threadFactory());
+
+        try (CloseableHttpClient client = isEmpty(getClientref()) ? build(concurrency) : null) {
+            for (long i = 0; i < warmup; i += 1) {
+                send(client);
+            }
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            AtomicLong next = new AtomicLong(0);
+            AtomicLong errors = new AtomicLong(0);
+            long interval = (rate > 0) ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            long start = System.nanoTime();
+            long end = (duration > 0) ? start + TimeUnit.MILLISECONDS.toNanos(duration) : Long.MAX_VALUE;
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < concurrency; i += 1) {
+                futures.add(executor.submit(() -> {
+                    for (;;) {
+                        long index = next.getAndIncrement();
+
+                        if (count > 0 && index >= count) {
+                            break;
+                        }
+
+                        long scheduled = (interval > 0) ? start + index * interval : System.nanoTime();
+
+                        if (scheduled >= end || System.nanoTime() >= end) {
+                            break;
+                        }
+
+                        long delay = scheduled - System.nanoTime();
+
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+
+                        if (send(client)) {
+                            histogram.record(System.nanoTime() - scheduled);
+                        } else {
+                            errors.incrementAndGet();
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            report(histogram, errors.get(), System.nanoTime() - start);
+        } catch (BuildException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            throw new BuildException(throwable);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean send(CloseableHttpClient client) {
+        boolean success = false;
+
+        try {
+            HttpUriRequest message = request.request();
+
+            request.configure(message);
+
+            HttpClientResponseHandler<Boolean> handler = response -> response.getCode() < 400;
+
+            success = (client != null) ? client.execute(message, handler) : execute(message, handler);
+        } catch (Exception exception) {
+            log(String.valueOf(exception));
+        }
+
+        return success;
+    }
+
+    private void report(LatencyHistogram histogram, long errors, long elapsed) throws BuildException {
+        long total = histogram.getCount() + errors;
+        double throughput = (elapsed > 0) ? total / (elapsed / 1e9) : 0;
+
+        log(total + " requests in " + String.format("%.3f", elapsed / 1e9) + " s"
+            + ", " + errors + " errors"
+            + ", " + String.format("%.1f", throughput) + " requests/s");
+        log(String.format("mean: %.3f ms", histogram.getMean() / 1e6));
+
+        for (double percentile : PERCENTILES) {
+            log(String.format("p%s: %.3f ms", format(percentile), millis(histogram.getValueAtPercentile(percentile))));
+        }
+
+        log(String.format("max: %.3f ms", millis(histogram.getMax())));
+
+        if (! isEmpty(property)) {
+            getProject().setNewProperty(property + DOT + "count", String.valueOf(total));
+            getProject().setNewProperty(property + DOT + "errors", String.valueOf(errors));
+            getProject().setNewProperty(property + DOT + "throughput", String.format("%.1f", throughput));
+            getProject().setNewProperty(property + DOT + "mean", String.format("%.3f", histogram.getMean() / 1e6));
+
+            for (double percentile : PERCENTILES) {
+                getProject().setNewProperty(property + DOT + "p" + format(percentile).replace(DOT, ""),
+                                            String.format("%.3f", millis(histogram.getValueAtPercentile(percentile))));
+            }
+
+            getProject().setNewProperty(property + DOT + "max", String.format("%.3f", millis(histogram.getMax())));
+        }
+
+        List<String> failures = new ArrayList<>();
+
+        if (maxerrors >= 0 && errors > maxerrors) {
+            failures.add(errors + " errors > " + maxerrors);
+        }
+
+        if (minthroughput > 0 && throughput < minthroughput) {
+            failures.add(String.format("%.1f requests/s < %s", throughput, minthroughput));
+        }
+
+        for (Threshold threshold : thresholds) {
+            double value = millis(histogram.getValueAtPercentile(threshold.getPercentile()));
+
+            if (value > threshold.getMax()) {
+                failures.add(String.format("p%s %.3f ms > %s ms", format(threshold.getPercentile()), value, threshold.getMax()));
+            }
+        }
+
+        if (! failures.isEmpty()) {
+            throw new BuildException(String.join("; ", failures));
+        }
+    }
+
+    private static double millis(long nanos) { return nanos / 1e6; }
+
+    private static String format(double percentile) {
+        return (percentile == Math.rint(percentile)) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    /**
+     * {@code <threshold percentile="..." max="..."/>} nested element:
+     * the build fails if the latency at {@code percentile} exceeds
+     * {@code max} milliseconds.
+     */
+    @NoArgsConstructor @ToString
+    public static class Threshold {
+        @Getter @Setter
+        private double percentile = 99;
+        @Getter @Setter
+        private double max = Double.MAX_VALUE;
+    }
+}
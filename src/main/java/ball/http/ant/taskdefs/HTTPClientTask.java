@@ -0,0 +1,212 @@
+package ball.http.ant.taskdefs;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.util.ant.taskdefs.AnnotatedAntTask;
+import ball.util.ant.taskdefs.AntTask;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpRequestInterceptor;
+import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Task;
+
+/**
+ * {@link.uri http://ant.apache.org/ Ant} {@link Task} to declare a
+ * pooled {@link CloseableHttpClient} shared by {@link HTTPTask}s for the
+ * rest of the build.  The {@link Task} is referenced by its {@code id}
+ * (see {@link HTTPTask#setClientref(String)}) and the client is closed
+ * when the build finishes.
+ * <p>
+ * The shared client's interceptors dispatch to the executing
+ * {@link HTTPTask} so logging and buffering behave as they do with a
+ * per-task client; {@link HTTPTask#builder()} customizations are not
+ * applied to the shared client.
+ * </p>
+ *
+ * {@ant.task}
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@AntTask("http-client")
+@NoArgsConstructor @ToString(of = { "maxTotal", "maxPerRoute" })
+public class HTTPClientTask extends Task implements AnnotatedAntTask {
+    private static final String TASK = HTTPTask.class.getName();
+
+    @Getter @Setter
+    private Integer maxTotal = null;
+    @Getter @Setter
+    private Integer maxPerRoute = null;
+    @Getter @Setter
+    private Long connectTimeout = null;
+    @Getter @Setter
+    private Long socketTimeout = null;
+    @Getter @Setter
+    private Long timeToLive = null;
+    private CloseableHttpClient client = null;
+    private PoolingHttpClientConnectionManager manager = null;
+
+    @Override
+    public void execute() throws BuildException {
+        super.execute();
+        AnnotatedAntTask.super.execute();
+
+        client();
+
+        log(String.valueOf(manager.getTotalStats()));
+    }
+
+    /**
+     * Method to get the shared {@link CloseableHttpClient} (creating it
+     * on first use).
+     *
+     * @return  The {@link CloseableHttpClient}.
+     */
+    public synchronized CloseableHttpClient client() {
+        if (client == null) {
+            PoolingHttpClientConnectionManagerBuilder builder = PoolingHttpClientConnectionManagerBuilder.create();
+            ConnectionConfig.Builder config = ConnectionConfig.custom();
+
+            if (maxTotal != null) {
+                builder.setMaxConnTotal(maxTotal);
+            }
+
+            if (maxPerRoute != null) {
+                builder.setMaxConnPerRoute(maxPerRoute);
+            }
+
+            if (connectTimeout != null) {
+                config.setConnectTimeout(Timeout.ofMilliseconds(connectTimeout));
+            }
+
+            if (socketTimeout != null) {
+                config.setSocketTimeout(Timeout.ofMilliseconds(socketTimeout));
+            }
+
+            if (timeToLive != null) {
+                config.setTimeToLive(TimeValue.ofMilliseconds(timeToLive));
+            }
+
+            manager = builder.setDefaultConnectionConfig(config.build()).build();
+            client =
+                HttpClientBuilder.create()
+                .setConnectionManager(manager)
+                .addRequestInterceptorLast(REQUEST_INTERCEPTOR)
+                .addResponseInterceptorLast(RESPONSE_INTERCEPTOR)
+                .evictIdleConnections(TimeValue.of(1, TimeUnit.MINUTES))
+                .build();
+
+            getProject().addBuildListener(new Closer());
+        }
+
+        return client;
+    }
+
+    /**
+     * Method to create an {@link HttpContext} that binds an
+     * {@link HTTPTask} to a request executed with the {@link #client()}.
+     *
+     * @param   task            The {@link HTTPTask}.
+     *
+     * @return  The {@link HttpContext}.
+     */
+    public HttpContext context(HTTPTask task) {
+        HttpClientContext context = HttpClientContext.create();
+
+        context.setAttribute(TASK, task);
+
+        return context;
+    }
+
+    private static HTTPTask task(HttpContext context) {
+        Object object = (context != null) ? context.getAttribute(TASK) : null;
+
+        return (object instanceof HTTPTask) ? (HTTPTask) object : null;
+    }
+
+    private static final HttpRequestInterceptor REQUEST_INTERCEPTOR =
+        (request, details, context) -> {
+            HTTPTask task = task(context);
+
+            if (task != null) {
+                task.process(request, details, context);
+            }
+        };
+
+    private static final HttpResponseInterceptor RESPONSE_INTERCEPTOR =
+        (response, details, context) -> {
+            HTTPTask task = task(context);
+
+            if (task != null) {
+                task.process(response, details, context);
+            }
+        };
+
+    @NoArgsConstructor @ToString
+    private class Closer implements BuildListener {
+        @Override
+        public void buildFinished(BuildEvent event) {
+            synchronized (HTTPClientTask.this) {
+                if (client != null) {
+                    try {
+                        client.close(CloseMode.GRACEFUL);
+                    } finally {
+                        client = null;
+                        manager = null;
+                    }
+                }
+            }
+
+            event.getProject().removeBuildListener(this);
+        }
+
+        @Override
+        public void buildStarted(BuildEvent event) { }
+
+        @Override
+        public void targetStarted(BuildEvent event) { }
+
+        @Override
+        public void targetFinished(BuildEvent event) { }
+
+        @Override
+        public void taskStarted(BuildEvent event) { }
+
+        @Override
+        public void taskFinished(BuildEvent event) { }
+
+        @Override
+        public void messageLogged(BuildEvent event) { }
+    }
+}
@@ -18,7 +18,6 @@ package ball.http.ant.taskdefs;
  * limitations under the License.
  * ##########################################################################
  */
-import ball.activation.ReaderWriterDataSource;
 import ball.swing.table.MapTableModel;
 import ball.util.PropertiesImpl;
 import ball.util.ant.taskdefs.AnnotatedAntTask;
@@ -26,10 +25,20 @@ import ball.util.ant.taskdefs.AntTask;
 import ball.util.ant.taskdefs.ClasspathDelegateAntTask;
 import ball.util.ant.taskdefs.ConfigurableAntTask;
 import ball.util.ant.types.StringAttributeType;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +59,10 @@ import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.EntityDetails;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
@@ -60,15 +73,24 @@ import org.apache.hc.core5.http.HttpRequestInterceptor;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.HttpResponseInterceptor;
 import org.apache.hc.core5.http.NameValuePair;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
 import org.apache.hc.core5.http.io.entity.BufferedHttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.net.URIBuilder;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
+import org.apache.tools.ant.UnknownElement;
 import org.apache.tools.ant.util.ClasspathUtils;
 
 import static ball.activation.ReaderWriterDataSource.CONTENT_TYPE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static lombok.AccessLevel.PROTECTED;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -85,6 +107,7 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 public abstract class HTTPTask extends Task implements AnnotatedAntTask, ClasspathDelegateAntTask, ConfigurableAntTask,
                                                        HttpRequestInterceptor, HttpResponseInterceptor {
     private static final String DOT = ".";
+    private static final long TRANSFER_SIZE = 8 << 20;
 
     private final HttpClientBuilder builder =
         HttpClientBuilder.create()
@@ -95,6 +118,12 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
     private ClasspathUtils.Delegate delegate = null;
     @Getter @Setter
     private boolean buffer = false;
+    @Getter @Setter
+    private String clientref = null;
+    @Getter
+    private LogLevel logLevel = LogLevel.BODY;
+    @Getter @Setter
+    private int maxLogged = 8 << 10;
 
     @Override
     public void init() throws BuildException {
@@ -117,48 +146,136 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
      */
     protected HttpClientBuilder builder() { return builder; }
 
-    @Override
-    public void process(HttpRequest request, EntityDetails details, HttpContext context) throws IOException {
-        if (request instanceof HttpEntityContainer) {
-            HttpEntity entity = ((HttpEntityContainer) request).getEntity();
+    /**
+     * Method to build a {@link CloseableHttpClient} from the
+     * {@link #builder()} whose connection pool allows
+     * {@code connections} concurrent connections (per route).  The
+     * caller is responsible for closing the client.
+     *
+     * @param   connections     The number of connections.
+     *
+     * @return  The {@link CloseableHttpClient}.
+     */
+    protected CloseableHttpClient build(int connections) {
+        return builder()
+               .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                                     .setMaxConnTotal(connections)
+                                     .setMaxConnPerRoute(connections)
+                                     .build())
+               .build();
+    }
 
-            if (entity != null) {
-                if (! entity.isRepeatable()) {
-                    if (isBuffer()) {
-                        ((HttpEntityContainer) request).setEntity(new BufferedHttpEntity(entity));
-                    }
-                }
+    /**
+     * Method to execute a request with the {@link HTTPClientTask} client
+     * referenced by {@link #getClientref()} or, if none is specified,
+     * with a client built (and closed) for the request.
+     *
+     * @param   <T>             The result type.
+     * @param   request         The {@link ClassicHttpRequest}.
+     * @param   handler         The {@link HttpClientResponseHandler}.
+     *
+     * @return  The handler result.
+     *
+     * @throws  IOException     If an I/O exception occurs.
+     */
+    protected <T> T execute(ClassicHttpRequest request,
+                            HttpClientResponseHandler<? extends T> handler) throws IOException {
+        T result = null;
+        HTTPClientTask shared = getHTTPClientTask();
+
+        if (shared != null) {
+            result = shared.client().execute(request, shared.context(this), handler);
+        } else {
+            try (CloseableHttpClient client = builder().build()) {
+                result = client.execute(request, handler);
             }
         }
 
-        log();
-        log(context);
-        log();
-        log(request);
+        return result;
+    }
+
+    private HTTPClientTask getHTTPClientTask() throws BuildException {
+        HTTPClientTask task = null;
+
+        if (! isEmpty(getClientref())) {
+            Object object = getProject().getReference(getClientref());
+
+            if (object instanceof UnknownElement) {
+                UnknownElement element = (UnknownElement) object;
+
+                element.maybeConfigure();
+                object = element.getRealThing();
+            }
+
+            if (object instanceof HTTPClientTask) {
+                task = (HTTPClientTask) object;
+            } else {
+                throw new BuildException("clientref=\"" + getClientref() + "\" does not refer to an http-client");
+            }
+        }
+
+        return task;
+    }
+
+    /**
+     * Method to set the {@link LogLevel} (case-insensitive).
+     *
+     * @param   string          The {@link LogLevel} name.
+     */
+    public void setLogLevel(String string) {
+        logLevel = LogLevel.valueOf(string.trim().toUpperCase());
+    }
+
+    @Override
+    public void process(HttpRequest request, EntityDetails details, HttpContext context) throws IOException {
+        process((HttpMessage) request, context);
     }
 
     @Override
     public void process(HttpResponse response, EntityDetails details, HttpContext context) throws IOException {
-        if (response instanceof HttpEntityContainer) {
-            HttpEntity entity = ((HttpEntityContainer) response).getEntity();
+        process((HttpMessage) response, context);
+    }
 
-            if (entity != null) {
-                if (! entity.isRepeatable()) {
-                    if (isBuffer()) {
-                        ((HttpEntityContainer) response).setEntity(new BufferedHttpEntity(entity));
-                    }
+    private void process(HttpMessage message, HttpContext context) throws IOException {
+        HttpEntity entity = getHttpEntity(message);
+
+        if (entity != null) {
+            if (! entity.isRepeatable()) {
+                if (isBuffer()) {
+                    entity = new BufferedHttpEntity(entity);
+                    ((HttpEntityContainer) message).setEntity(entity);
                 }
             }
         }
 
-        log();
-        log(context);
-        log();
-        log(response);
+        if (logLevel.compareTo(LogLevel.VERBOSE) >= 0) {
+            log();
+            log(context);
+        }
+
+        if (logLevel.compareTo(LogLevel.HEADERS) >= 0) {
+            log();
+            log(message);
+        }
+
+        if (entity != null && isBodyLogged()) {
+            ((HttpEntityContainer) message).setEntity(new LoggingEntity(entity, getContentType(message)));
+        }
     }
 
     /**
-     * See {@link #log(String)}.
+     * Method to determine if entity bodies are logged.
+     *
+     * @return  {@code true} if the {@link LogLevel} is at least
+     *          {@link LogLevel#BODY} and {@link #getMaxLogged()} is
+     *          positive; {@code false} otherwise.
+     */
+    protected boolean isBodyLogged() {
+        return logLevel.compareTo(LogLevel.BODY) >= 0 && maxLogged > 0;
+    }
+
+    /**
+     * See {@link #log(String)}.  Only invoked at {@link LogLevel#VERBOSE}.
      *
      * @param   context         The {@link HttpContext} to log.
      */
@@ -167,7 +284,8 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
     }
 
     /**
-     * See {@link #log(String)}.
+     * See {@link #log(String)}.  Logs the headers; the entity body is
+     * logged as it is written or read (see {@link #setMaxLogged(int)}).
      *
      * @param   message         The {@link HttpMessage} to log.
      */
@@ -184,8 +302,6 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
         for (Header header : message.getHeaders()) {
             log(String.valueOf(header));
         }
-
-        log(getContentType(message), getHttpEntity(message));
     }
 
     private String getContentType(HttpMessage message) {
@@ -205,35 +321,48 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
     }
 
     /**
-     * See {@link #log(String)}.
+     * See {@link #log(String)}.  Invoked with the (at most
+     * {@link #getMaxLogged()}) bytes captured from an entity once it
+     * has been completely written or read.
      *
      * @param   type            The entity {@code Content-Type} (if
      *                          specified).
-     * @param   entity          The {@link HttpEntity} to log.
+     * @param   bytes           The captured bytes.
+     * @param   length          The number of captured bytes.
+     * @param   total           The total number of bytes written or
+     *                          read.
      */
-    protected void log(String type, HttpEntity entity) {
-        if (entity != null) {
-            if (entity.isRepeatable()) {
-                ReaderWriterDataSource ds = new ReaderWriterDataSource(null, type);
+    protected void log(String type, byte[] bytes, int length, long total) {
+        ContentType contentType = (type != null) ? ContentType.parseLenient(type) : null;
 
-                try (OutputStream out = ds.getOutputStream()) {
-                    entity.writeTo(out);
-                    out.flush();
+        if (contentType == null || isText(contentType)) {
+            Charset charset = contentType != null ? contentType.getCharset() : null;
+            String string = new String(bytes, 0, length, (charset != null) ? charset : UTF_8);
 
-                    String string = ds.toString();
+            if (! isEmpty(string)) {
+                log();
+                log(string);
+            }
 
-                    if (! isEmpty(string)) {
-                        log();
-                        log(string);
-                    }
-                } catch (IOException exception) {
-                }
-            } else {
-                log(String.valueOf(entity));
+            if (total > length) {
+                log("... (" + total + " bytes)");
             }
+        } else if (total > 0) {
+            log();
+            log("[" + contentType.getMimeType() + ": " + total + " bytes]");
         }
     }
 
+    private static boolean isText(ContentType type) {
+        String mime = type.getMimeType().toLowerCase();
+
+        return (mime.startsWith("text/")
+                || mime.endsWith("json") || mime.endsWith("+json")
+                || mime.endsWith("xml") || mime.endsWith("+xml")
+                || mime.equals("application/x-www-form-urlencoded")
+                || mime.equals("application/javascript"));
+    }
+
     /**
      * Abstract {@link.uri http://ant.apache.org/ Ant} base
      * {@link org.apache.tools.ant.Task} for DELETE, GET, POST, and PUT
@@ -249,6 +378,10 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
 
         @Getter @Setter
         private String content = null;
+        @Getter @Setter
+        private File src = null;
+        @Getter @Setter
+        private File dest = null;
 
         public void setURI(String string) throws URISyntaxException {
             builder = new URIBuilder(string);
@@ -341,7 +474,9 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
             addHeaders(request, getPrefixedProperties("header" + DOT, properties).entrySet());
             addHeaders(request, headers);
 
-            if (! isEmpty(getContent())) {
+            if (getSrc() != null) {
+                ((HttpEntityContainer) request).setEntity(new FileChannelEntity(getSrc().toPath()));
+            } else if (! isEmpty(getContent())) {
                 setEntity(request, getContent());
             } else if (! isEmpty(properties.getProperty("content"))) {
                 setEntity(request, properties.getProperty("content"));
@@ -360,16 +495,99 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
             }
         }
 
+        /**
+         * Buffering is disabled if {@code src} or {@code dest} is
+         * specified.
+         *
+         * @return      {@code true} if non-repeatable entities should be
+         *              buffered; {@code false} otherwise.
+         */
+        @Override
+        public boolean isBuffer() {
+            return super.isBuffer() && getSrc() == null && getDest() == null;
+        }
+
+        /**
+         * Entity bodies are not logged if {@code src} or {@code dest} is
+         * specified (the size of a {@code dest} transfer is logged
+         * instead).
+         *
+         * @return      {@code true} if entity bodies are logged;
+         *              {@code false} otherwise.
+         */
+        @Override
+        protected boolean isBodyLogged() {
+            return super.isBodyLogged() && getSrc() == null && getDest() == null;
+        }
+
+        private Object drain(ClassicHttpResponse response) throws IOException {
+            HttpEntity entity = response.getEntity();
+
+            if (entity != null) {
+                try (InputStream in = entity.getContent()) {
+                    if (in != null) {
+                        byte[] buffer = new byte[8 << 10];
+
+                        while (in.read(buffer) >= 0) {
+                        }
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        private Object transfer(ClassicHttpResponse response) throws IOException {
+            int status = response.getCode();
+
+            if (status < 200 || status >= 300) {
+                throw new BuildException(response.getCode() + " " + response.getReasonPhrase());
+            }
+
+            Path dest = getDest().toPath().toAbsolutePath();
+            Path temporary = Files.createTempFile(dest.getParent(), dest.getFileName().toString(), ".tmp");
+
+            try {
+                HttpEntity entity = response.getEntity();
+
+                try (FileChannel out = FileChannel.open(temporary, WRITE, TRUNCATE_EXISTING)) {
+                    if (entity != null) {
+                        try (ReadableByteChannel in = Channels.newChannel(entity.getContent())) {
+                            long position = 0;
+
+                            for (long count = out.transferFrom(in, position, TRANSFER_SIZE);
+                                 count > 0;
+                                 count = out.transferFrom(in, position, TRANSFER_SIZE)) {
+                                position += count;
+                            }
+
+                            log(position + " bytes written to " + dest);
+                        }
+                    }
+                }
+
+                Files.move(temporary, dest, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+
+            return null;
+        }
+
         @Override
         public void execute() throws BuildException {
             super.execute();
 
-            try (CloseableHttpClient client = builder().build()) {
+            try {
                 HttpUriRequest request = request();
 
                 configure(request);
 
-                HttpResponse response = client.execute(request);
+                if (getDest() != null) {
+                    execute(request, this::transfer);
+                } else {
+                    execute(request, this::drain);
+                }
             } catch (BuildException exception) {
                 throw exception;
             } catch (Throwable throwable) {
@@ -470,6 +688,210 @@ public abstract class HTTPTask extends Task implements AnnotatedAntTask, Classpa
         protected HttpUriRequest request() { return new HttpPut(EMPTY); }
     }
 
+    /**
+     * {@link HTTPTask} logging levels.  Each level includes the levels
+     * before it.
+     */
+    public enum LogLevel {
+        /**
+         * Nothing is logged.
+         */
+        NONE,
+        /**
+         * Request and response headers.
+         */
+        HEADERS,
+        /**
+         * At most {@link #getMaxLogged()} bytes of each entity body.
+         */
+        BODY,
+        /**
+         * The {@link HttpContext}.
+         */
+        VERBOSE;
+    }
+
+    /**
+     * {@link HttpEntityWrapper} that captures at most
+     * {@link #getMaxLogged()} bytes of the entity as it is written or
+     * read and logs them once it has been completely written or read.
+     */
+    private class LoggingEntity extends HttpEntityWrapper {
+        private final String type;
+        private final byte[] bytes = new byte[maxLogged];
+        private int length = 0;
+        private long total = 0;
+
+        public LoggingEntity(HttpEntity entity, String type) {
+            super(entity);
+
+            this.type = type;
+        }
+
+        private void capture(int octet) {
+            if (length < bytes.length) {
+                bytes[length++] = (byte) octet;
+            }
+
+            total += 1;
+        }
+
+        private void capture(byte[] buffer, int offset, int count) {
+            int n = Math.min(count, bytes.length - length);
+
+            if (n > 0) {
+                System.arraycopy(buffer, offset, bytes, length, n);
+                length += n;
+            }
+
+            total += count;
+        }
+
+        private void flush() {
+            log(type, bytes, length, total);
+
+            length = 0;
+            total = 0;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream in = super.getContent();
+
+            return (in != null) ? new Tee(in) : null;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            super.writeTo(new FilterOutputStream(out) {
+                    @Override
+                    public void write(int octet) throws IOException {
+                        out.write(octet);
+                        capture(octet);
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int count) throws IOException {
+                        out.write(buffer, offset, count);
+                        capture(buffer, offset, count);
+                    }
+                });
+
+            flush();
+        }
+
+        private class Tee extends FilterInputStream {
+            private boolean done = false;
+
+            public Tee(InputStream in) { super(in); }
+
+            @Override
+            public int read() throws IOException {
+                int octet = super.read();
+
+                if (octet >= 0) {
+                    capture(octet);
+                } else {
+                    done();
+                }
+
+                return octet;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                int n = super.read(buffer, offset, count);
+
+                if (n > 0) {
+                    capture(buffer, offset, n);
+                } else if (n < 0) {
+                    done();
+                }
+
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    done();
+                }
+            }
+
+            private void done() {
+                if (! done) {
+                    done = true;
+                    flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Repeatable {@link HttpEntity} that transfers a file with
+     * {@link FileChannel#transferTo(long,long,java.nio.channels.WritableByteChannel)}.
+     */
+    @ToString(of = { "path" })
+    private static class FileChannelEntity extends AbstractHttpEntity {
+        private final Path path;
+
+        public FileChannelEntity(Path path) throws IOException {
+            super(contentType(path), null);
+
+            this.path = path;
+        }
+
+        private static ContentType contentType(Path path) throws IOException {
+            String type = Files.probeContentType(path);
+
+            return (type != null) ? ContentType.parseLenient(type) : ContentType.APPLICATION_OCTET_STREAM;
+        }
+
+        @Override
+        public long getContentLength() {
+            try {
+                return Files.size(path);
+            } catch (IOException exception) {
+                return -1;
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() { return true; }
+
+        @Override
+        public boolean isStreaming() { return false; }
+
+        @Override
+        public InputStream getContent() throws IOException { return Files.newInputStream(path); }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (FileChannel in = FileChannel.open(path, READ)) {
+                WritableByteChannel channel = Channels.newChannel(out);
+                long size = in.size();
+
+                for (long position = 0; position < size; ) {
+                    long count = in.transferTo(position, Math.min(size - position, TRANSFER_SIZE), channel);
+                    /*
+                     * transferTo() returns 0 past the end of a file that
+                     * shrank after its size was read.
+                     */
+                    if (count <= 0) {
+                        throw new IOException(path + ": Truncated at " + position + " of " + size + " bytes");
+                    }
+
+                    position += count;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException { }
+    }
+
     /**
      * {@link StringAttributeType} implementation that includes
      * {@link NameValuePair}.
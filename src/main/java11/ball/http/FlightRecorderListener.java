@@ -0,0 +1,135 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder {@link ProtocolCallListener}: records every
+ * {@link ProtocolCall} as a {@value #CALL} event and each
+ * {@link ProtocolCall.Phase} as a {@value #PHASE} event nested (in time,
+ * on the calling {@link Thread}) within it.  When the events are not
+ * enabled, each callback costs one (typically scalar-replaced) event
+ * allocation and an {@link Event#isEnabled()} check.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+final class FlightRecorderListener implements ProtocolCallListener {
+    private static final String CALL = "ball.http.ProtocolCall";
+    private static final String PHASE = "ball.http.ProtocolCall.Phase";
+    private static final FlightRecorderListener INSTANCE = new FlightRecorderListener();
+
+    private FlightRecorderListener() { }
+
+    /**
+     * @return  The shared {@link ProtocolCallListener}.
+     */
+    public static ProtocolCallListener getInstance() { return INSTANCE; }
+
+    @Override
+    public void callStarted(ProtocolCall call) {
+        CallEvent event = new CallEvent();
+
+        if (event.isEnabled()) {
+            event.begin();
+            call.setAttribute(CALL, event);
+        }
+    }
+
+    @Override
+    public void phaseStarted(ProtocolCall call, ProtocolCall.Phase phase) {
+        PhaseEvent event = new PhaseEvent();
+
+        if (event.isEnabled()) {
+            event.begin();
+            call.setAttribute(PHASE, event);
+        }
+    }
+
+    @Override
+    public void phaseEnded(ProtocolCall call, ProtocolCall.Phase phase, long nanos) {
+        PhaseEvent event = (PhaseEvent) call.getAttribute(PHASE);
+
+        if (event != null) {
+            call.setAttribute(PHASE, null);
+            event.end();
+
+            if (event.shouldCommit()) {
+                event.protocol = call.getMethod().getDeclaringClass().getName();
+                event.method = call.getMethod().getName();
+                event.phase = phase.name();
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public void callEnded(ProtocolCall call) {
+        CallEvent event = (CallEvent) call.getAttribute(CALL);
+
+        if (event != null) {
+            call.setAttribute(CALL, null);
+            event.end();
+
+            if (event.shouldCommit()) {
+                event.protocol = call.getMethod().getDeclaringClass().getName();
+                event.method = call.getMethod().getName();
+                event.template = call.getTemplate();
+                event.uri = String.valueOf(call.getURI());
+                event.status = call.getStatus();
+                event.requestBytes = call.getRequestBytes();
+                event.responseBytes = call.getResponseBytes();
+                event.failure = (call.getFailure() != null) ? call.getFailure().getClass().getName() : null;
+                event.commit();
+            }
+        }
+    }
+
+    @Name(CALL)
+    @Label("Protocol Call")
+    @Category({ "HTTP", "ball-http" })
+    @Description("A ProtocolClient proxy method call")
+    private static class CallEvent extends Event {
+        @Label("Protocol") public String protocol;
+        @Label("Method") public String method;
+        @Label("URI Template") public String template;
+        @Label("URI") public String uri;
+        @Label("Status") public int status;
+        @Label("Request Bytes") @DataAmount public long requestBytes;
+        @Label("Response Bytes") @DataAmount public long responseBytes;
+        @Label("Failure") public String failure;
+    }
+
+    @Name(PHASE)
+    @Label("Protocol Call Phase")
+    @Category({ "HTTP", "ball-http" })
+    @Description("A phase of a ProtocolClient proxy method call")
+    @StackTrace(false)
+    private static class PhaseEvent extends Event {
+        @Label("Protocol") public String protocol;
+        @Label("Method") public String method;
+        @Label("Phase") public String phase;
+    }
+}
@@ -0,0 +1,67 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * {@link Thread} creation for {@link ProtocolExecutors}.  Java 21 (and
+ * later) multi-release JAR implementation: every task runs on a virtual
+ * {@link Thread} so blocking protocol calls do not tie up platform
+ * {@link Thread}s.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class Threads {
+
+    /**
+     * See {@link ProtocolExecutors#isVirtual()}.
+     *
+     * @return  {@code true}
+     */
+    static boolean isVirtual() { return true; }
+
+    /**
+     * Method to get a {@link ThreadFactory}.
+     *
+     * @param   prefix          The {@link Thread} name prefix.
+     *
+     * @return  A {@link ThreadFactory} for virtual {@link Thread}s.
+     */
+    static ThreadFactory factory(String prefix) {
+        return Thread.ofVirtual().name(prefix, 0).factory();
+    }
+
+    /**
+     * Method to create a new {@link ExecutorService}.
+     *
+     * @param   factory         The {@link ThreadFactory}.
+     *
+     * @return  A {@link Thread}-per-task {@link ExecutorService}.
+     */
+    static ExecutorService newExecutorService(ThreadFactory factory) {
+        return Executors.newThreadPerTaskExecutor(factory);
+    }
+}
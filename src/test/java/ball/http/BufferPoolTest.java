@@ -0,0 +1,154 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link BufferPool} and {@link PooledByteArrayOutputStream} tests.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+public class BufferPoolTest {
+    private static final int[] SIZES = new int[] { 16, 64, 256 };
+
+    private static BufferPool create(boolean leakDetection) {
+        String previous = System.getProperty(BufferPool.LEAK_DETECTION);
+
+        System.setProperty(BufferPool.LEAK_DETECTION, String.valueOf(leakDetection));
+
+        try {
+            return new BufferPool(SIZES, 4);
+        } finally {
+            if (previous != null) {
+                System.setProperty(BufferPool.LEAK_DETECTION, previous);
+            } else {
+                System.clearProperty(BufferPool.LEAK_DETECTION);
+            }
+        }
+    }
+
+    @Test
+    public void leakIsReported() {
+        BufferPool pool = create(true);
+        byte[] heap = pool.acquire(10);
+        ByteBuffer direct = pool.acquireDirect(100);
+
+        assertEquals(2, pool.outstanding());
+
+        Collection<Throwable> leaks = pool.leaks();
+
+        assertEquals(2, leaks.size());
+        assertTrue(leaks.stream()
+                   .flatMap(t -> Arrays.stream(t.getStackTrace()))
+                   .anyMatch(t -> t.getMethodName().equals("leakIsReported")));
+
+        pool.release(heap);
+        assertEquals(1, pool.outstanding());
+        assertEquals(1, pool.leaks().size());
+
+        pool.release(direct);
+        assertEquals(0, pool.outstanding());
+        assertTrue(pool.leaks().isEmpty());
+    }
+
+    @Test
+    public void leakIsCountedWithoutLeakDetection() {
+        BufferPool pool = create(false);
+        byte[] buffer = pool.acquire(10);
+
+        assertEquals(1, pool.outstanding());
+        assertTrue(pool.leaks().isEmpty());
+
+        pool.release(buffer);
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    public void buffersAreReused() {
+        BufferPool pool = create(false);
+        byte[] buffer = pool.acquire(20);
+
+        assertEquals(64, buffer.length);
+
+        pool.release(buffer);
+        assertTrue(pool.acquire(40) == buffer);
+        assertEquals(1000, pool.acquire(1000).length);
+    }
+
+    @Test
+    public void outputStreamReleasesOnClose() throws Exception {
+        BufferPool pool = create(true);
+        byte[] bytes = new byte[1000];
+
+        new Random(0).nextBytes(bytes);
+
+        try (PooledByteArrayOutputStream out = new PooledByteArrayOutputStream(pool)) {
+            out.write(bytes, 0, bytes.length);
+
+            assertEquals(bytes.length, out.size());
+            assertArrayEquals(bytes, out.toByteArray());
+            assertTrue(pool.outstanding() > 1);
+        }
+
+        assertEquals(0, pool.outstanding());
+        assertTrue(pool.leaks().isEmpty());
+    }
+
+    @Test
+    public void inputStreamOwnsBuffers() throws Exception {
+        BufferPool pool = create(true);
+        byte[] bytes = new byte[1000];
+
+        new Random(1).nextBytes(bytes);
+
+        PooledByteArrayOutputStream out = new PooledByteArrayOutputStream(pool);
+
+        out.write(bytes, 0, bytes.length);
+
+        InputStream in = out.toInputStream();
+
+        out.close();
+        assertTrue(pool.outstanding() > 0);
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int count;
+
+        while ((count = in.read(buffer)) >= 0) {
+            copy.write(buffer, 0, count);
+        }
+
+        assertArrayEquals(bytes, copy.toByteArray());
+
+        in.close();
+        assertEquals(0, pool.outstanding());
+        assertTrue(pool.leaks().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package ball.http;
+/*-
+ * ##########################################################################
+ * Web API Client (HTTP) Utilities
+ * %%
+ * Copyright (C) 2016 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ProtocolRequestBuilder} XML request body tests.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+public class XMLRequestBodyTest {
+    private static final URI BASE = URI.create("http://localhost/");
+    private static final String NAME = "Cr\u00e8me br\u00fbl\u00e9e";
+
+    @Test
+    public void marshalsUTF8() throws Exception {
+        HttpEntity entity = new Client().proxy().post(BASE, new Item(NAME)).getEntity();
+
+        assertEquals(ContentType.APPLICATION_XML.getMimeType(), ContentType.parse(entity.getContentType()).getMimeType());
+        assertBody(entity, UTF_8);
+    }
+
+    @Test
+    public void marshalsDeclaredCharset() throws Exception {
+        HttpEntity entity = new Client().proxy().latin1(BASE, new Item(NAME)).getEntity();
+
+        assertEquals(ISO_8859_1, ContentType.parse(entity.getContentType()).getCharset());
+        assertBody(entity, ISO_8859_1);
+    }
+
+    private void assertBody(HttpEntity entity, Charset charset) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        entity.writeTo(out);
+
+        String xml = new String(out.toByteArray(), charset);
+
+        assertTrue(xml.contains("encoding=\"" + charset.name() + "\""), xml);
+        assertTrue(xml.contains("<name>" + NAME + "</name>"), xml);
+    }
+
+    @XmlRootElement(name = "item") @XmlAccessorType(XmlAccessType.FIELD)
+    public static class Item {
+        public String name = null;
+
+        public Item() { }
+
+        public Item(String name) { this.name = name; }
+    }
+
+    @Path("/") @Produces("application/xml")
+    public interface API {
+        @POST @Path("items")
+        ClassicHttpRequest post(URI base, Item item);
+
+        @POST @Path("items") @Produces("application/xml; charset=ISO-8859-1")
+        ClassicHttpRequest latin1(URI base, Item item);
+    }
+
+    public static class Client extends ProtocolClient<API> {
+        public Client() { super(API.class); }
+    }
+}